@@ -0,0 +1,51 @@
+package com.freva.masteroppgave.benchmarks;
+
+import com.freva.masteroppgave.classifier.ClassifierOptions;
+import com.freva.masteroppgave.classifier.CompiledOptions;
+import com.freva.masteroppgave.lexicon.container.PriorPolarityLexicon;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Shared input for the benchmarks: a handful of tweets covering the different filters (URLs, RT tags, hashtags,
+ * usernames, e-mails, emoticons, unicode emojis, HTML entities, free digits and accented characters) and the bundled
+ * AFINN lexicon and options.
+ */
+public class BenchmarkData {
+    public static final String[] TWEETS = {
+            "RT @someone: I love this new phone sooo much!!! :) http://t.co/abc123",
+            "Worst. Service. Ever. Never flying with them again #fail #angry :(",
+            "@friend haha xD that was hilarious, can't stop laughing :D",
+            "Not bad at all, actually pretty good &amp; cheap www.example.com/deal",
+            "Watching the game tonight, 3-2 at half time... come on!! #football",
+            "I don't think this is a good idea :/ but whatever",
+            "Café au lait and a croissant, perfect morning ☕️ 😊",
+            "Mail me at someone@example.com if you want the tickets, only 20 left",
+            "So so so disappointed with the ending :'( why would they do that?",
+            "<3 <3 <3 best concert of my life!!!! thank you @band ^_^",
+            "The meeting got moved to 10:30 tomorrow, not really happy about it",
+            "Great, another monday. Just great. :p",
+            "Absolutely amazing performance by the whole team tonight, well deserved win 👏👏",
+            "Traffic is terrible &gt;:( going to be late again",
+            "rt this if you agree: the new update is awful and buggy",
+            "Wow... just wow. No words. #speechless http://bit.ly/xyz",
+    };
+
+    public static File getDataFile(String name) {
+        File file = new File("res/data", name);
+        return file.exists() ? file : new File("../res/data", name);
+    }
+
+    public static PriorPolarityLexicon loadLexicon() throws IOException {
+        return new PriorPolarityLexicon(getDataFile("lexicon.afinn.json"));
+    }
+
+    /**
+     * Loads the bundled AFINN options into {@link ClassifierOptions} and returns a snapshot of them.
+     */
+    public static CompiledOptions loadOptions() throws IOException {
+        ClassifierOptions.loadOptions(getDataFile("options.afinn.json"));
+        return ClassifierOptions.compileOptions();
+    }
+}
@@ -0,0 +1,58 @@
+package com.freva.masteroppgave.benchmarks;
+
+import com.freva.masteroppgave.preprocessing.filters.CanonicalForm;
+import com.freva.masteroppgave.preprocessing.filters.Filters;
+import com.freva.masteroppgave.utils.JSONUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to correct words via their canonical form, using a dictionary built from the lexicon words. The words contain
+ * dictionary words, elongated variants of them ("goooood") and words not in the dictionary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanonicalFormBenchmark {
+    private String[] words;
+
+    @Setup
+    public void setup() throws IOException {
+        Map<String, Set<String>> dictionary = new HashMap<>();
+        List<String> lexiconWords = new ArrayList<>(BenchmarkData.loadLexicon().getSubjectiveWords());
+        for (String word : lexiconWords) {
+            dictionary.computeIfAbsent(Filters.removeRepeatingCharacters(word), k -> new HashSet<>()).add(word);
+        }
+
+        File dictionaryFile = File.createTempFile("dictionary", ".json");
+        dictionaryFile.deleteOnExit();
+        JSONUtils.toJSONFile(dictionaryFile, dictionary, false);
+        CanonicalForm.loadDictionary(dictionaryFile);
+
+        Random random = new Random(42);
+        words = new String[256];
+        for (int i = 0; i < words.length; i++) {
+            String word = lexiconWords.get(random.nextInt(lexiconWords.size()));
+            switch (i % 3) {
+                case 0: words[i] = word; break;
+                case 1: words[i] = word.replaceAll("([aeiou])", "$1$1$1"); break;
+                default: words[i] = word + "xyz"; break;
+            }
+        }
+    }
+
+    @Benchmark
+    public void correctWordViaCanonical(Blackhole blackhole) {
+        for (String word : words) {
+            blackhole.consume(CanonicalForm.correctWordViaCanonical(word));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.freva.masteroppgave.benchmarks;
+
+import com.freva.masteroppgave.LexicalClassifier;
+import com.freva.masteroppgave.classifier.Classifier;
+import com.freva.masteroppgave.preprocessing.filters.Filters;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end time to filter and calculate the sentiment of all of {@link BenchmarkData#TWEETS}, with either the
+ * regex filter chain or the hand written normalizer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassifierBenchmark {
+    @Param({"CLASSIFIER_FILTERS", "FAST_CLASSIFIER_FILTERS"})
+    private String filters;
+
+    private Classifier classifier;
+
+    @Setup
+    public void setup() throws IOException {
+        Filters tweetFilters = filters.equals("CLASSIFIER_FILTERS") ?
+                LexicalClassifier.CLASSIFIER_FILTERS : LexicalClassifier.FAST_CLASSIFIER_FILTERS;
+        classifier = new Classifier(BenchmarkData.loadLexicon(), tweetFilters, BenchmarkData.loadOptions());
+    }
+
+    @Benchmark
+    public void calculateSentiment(Blackhole blackhole) {
+        for (String tweet : BenchmarkData.TWEETS) {
+            blackhole.consume(classifier.calculateSentiment(tweet));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.freva.masteroppgave.benchmarks;
+
+import com.freva.masteroppgave.preprocessing.filters.Filters;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Time to apply every individual filter in {@link Filters} to all of {@link BenchmarkData#TWEETS}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterMethodsBenchmark {
+    private static final Map<String, Function<String, String>> FILTERS = new HashMap<String, Function<String, String>>() {{
+        put("HTMLUnescape", Filters::HTMLUnescape);
+        put("normalizeForm", Filters::normalizeForm);
+        put("removeRepeatedWhitespace", Filters::removeRepeatedWhitespace);
+        put("parseUnicodeEmojisToAlias", Filters::parseUnicodeEmojisToAlias);
+        put("removeUnicodeEmoticons", Filters::removeUnicodeEmoticons);
+        put("parseEmoticons", Filters::parseEmoticons);
+        put("removeEmoticons", Filters::removeEmoticons);
+        put("removeUsername", Filters::removeUsername);
+        put("placeholderUsername", Filters::placeholderUsername);
+        put("removeEMail", Filters::removeEMail);
+        put("removeHashtag", Filters::removeHashtag);
+        put("placeholderHashtag", Filters::placeholderHashtag);
+        put("hashtagToWord", Filters::hashtagToWord);
+        put("protectHashtag", Filters::protectHashtag);
+        put("removeRTTag", Filters::removeRTTag);
+        put("placeholderRTTag", Filters::placeholderRTTag);
+        put("removeURL", Filters::removeURL);
+        put("placeholderURL", Filters::placeholderURL);
+        put("removeInnerWordCharacters", Filters::removeInnerWordCharacters);
+        put("removeNonSyntacticalText", Filters::removeNonSyntacticalText);
+        put("removeNonSyntacticalTextPlus", Filters::removeNonSyntacticalTextPlus);
+        put("removeNonAlphanumericalText", Filters::removeNonAlphanumericalText);
+        put("removeNonAlphabeticText", Filters::removeNonAlphabeticText);
+        put("removeFreeDigits", Filters::removeFreeDigits);
+        put("removeRepeatingCharacters", Filters::removeRepeatingCharacters);
+    }};
+
+    @Param({"HTMLUnescape", "normalizeForm", "removeRepeatedWhitespace", "parseUnicodeEmojisToAlias",
+            "removeUnicodeEmoticons", "parseEmoticons", "removeEmoticons", "removeUsername", "placeholderUsername",
+            "removeEMail", "removeHashtag", "placeholderHashtag", "hashtagToWord", "protectHashtag", "removeRTTag",
+            "placeholderRTTag", "removeURL", "placeholderURL", "removeInnerWordCharacters", "removeNonSyntacticalText",
+            "removeNonSyntacticalTextPlus", "removeNonAlphanumericalText", "removeNonAlphabeticText",
+            "removeFreeDigits", "removeRepeatingCharacters"})
+    private String filter;
+
+    private Function<String, String> function;
+
+    @Setup
+    public void setup() {
+        function = FILTERS.get(filter);
+    }
+
+    @Benchmark
+    public void apply(Blackhole blackhole) {
+        for (String tweet : BenchmarkData.TWEETS) {
+            blackhole.consume(function.apply(tweet));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.freva.masteroppgave.benchmarks;
+
+import com.freva.masteroppgave.LexicalClassifier;
+import com.freva.masteroppgave.Main;
+import com.freva.masteroppgave.preprocessing.filters.Filters;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to apply each of the predefined filter chains to all of {@link BenchmarkData#TWEETS}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FiltersBenchmark {
+    private static final Map<String, Filters> FILTER_CHAINS = new HashMap<String, Filters>() {{
+        put("CLASSIFIER_FILTERS", LexicalClassifier.CLASSIFIER_FILTERS);
+        put("FAST_CLASSIFIER_FILTERS", LexicalClassifier.FAST_CLASSIFIER_FILTERS);
+        put("N_GRAM_FILTERS", Main.N_GRAM_FILTERS);
+        put("TWEET_FILTERS", Main.TWEET_FILTERS);
+    }};
+
+    @Param({"CLASSIFIER_FILTERS", "FAST_CLASSIFIER_FILTERS", "N_GRAM_FILTERS", "TWEET_FILTERS"})
+    private String chain;
+
+    private Filters filters;
+
+    @Setup
+    public void setup() {
+        filters = FILTER_CHAINS.get(chain);
+    }
+
+    @Benchmark
+    public void apply(Blackhole blackhole) {
+        for (String tweet : BenchmarkData.TWEETS) {
+            blackhole.consume(filters.apply(tweet));
+        }
+    }
+}
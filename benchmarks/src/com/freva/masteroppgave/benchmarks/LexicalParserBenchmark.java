@@ -0,0 +1,44 @@
+package com.freva.masteroppgave.benchmarks;
+
+import com.freva.masteroppgave.LexicalClassifier;
+import com.freva.masteroppgave.classifier.CompiledOptions;
+import com.freva.masteroppgave.classifier.sentence.LexicalParser;
+import com.freva.masteroppgave.lexicon.container.TokenTrie;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to lexically parse all of the (already filtered) {@link BenchmarkData#TWEETS}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexicalParserBenchmark {
+    private TokenTrie phraseTree;
+    private CompiledOptions options;
+    private String[] tweets;
+
+    @Setup
+    public void setup() throws IOException {
+        options = BenchmarkData.loadOptions();
+        phraseTree = BenchmarkData.loadLexicon().getPhraseTree();
+
+        tweets = new String[BenchmarkData.TWEETS.length];
+        for (int i = 0; i < tweets.length; i++) {
+            tweets[i] = LexicalClassifier.CLASSIFIER_FILTERS.apply(BenchmarkData.TWEETS[i]);
+        }
+    }
+
+    @Benchmark
+    public void lexicallyParseTweet(Blackhole blackhole) {
+        for (String tweet : tweets) {
+            blackhole.consume(LexicalParser.lexicallyParseTweet(tweet, phraseTree, options));
+        }
+    }
+}
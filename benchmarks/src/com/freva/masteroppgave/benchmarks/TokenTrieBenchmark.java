@@ -0,0 +1,54 @@
+package com.freva.masteroppgave.benchmarks;
+
+import com.freva.masteroppgave.lexicon.container.TokenTrie;
+import com.freva.masteroppgave.preprocessing.filters.RegexFilters;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to find the optimal tokenization of a sentence of the given length. Half of the words are drawn from the
+ * lexicon phrases, so both single words and multi word phrases are matched.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenTrieBenchmark {
+    private static final String[] FILLER_WORDS = {"the", "a", "i", "this", "is", "was", "and", "to", "it", "so"};
+
+    @Param({"4", "16", "64", "256"})
+    private int sentenceLength;
+
+    private TokenTrie phraseTree;
+    private String[] sentence;
+
+    @Setup
+    public void setup() throws IOException {
+        List<String> words = new ArrayList<>();
+        for (String phrase : BenchmarkData.loadLexicon().getSubjectiveWords()) {
+            for (String word : RegexFilters.WHITESPACE.split(phrase)) {
+                words.add(word);
+            }
+        }
+
+        phraseTree = BenchmarkData.loadLexicon().getPhraseTree();
+        Random random = new Random(42);
+        sentence = new String[sentenceLength];
+        for (int i = 0; i < sentenceLength; i++) {
+            sentence[i] = random.nextBoolean() ? words.get(random.nextInt(words.size())) :
+                    FILLER_WORDS[random.nextInt(FILLER_WORDS.length)];
+        }
+    }
+
+    @Benchmark
+    public List<String> findOptimalTokenization() {
+        return phraseTree.findOptimalTokenization(sentence);
+    }
+}
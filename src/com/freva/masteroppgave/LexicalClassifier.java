@@ -5,13 +5,15 @@ import com.freva.masteroppgave.classifier.ClassifierOptions;
 import com.freva.masteroppgave.preprocessing.filters.CanonicalForm;
 import com.freva.masteroppgave.lexicon.container.PriorPolarityLexicon;
 import com.freva.masteroppgave.preprocessing.filters.Filters;
+import com.freva.masteroppgave.preprocessing.filters.TweetNormalizer;
 import com.freva.masteroppgave.utils.reader.DataSetReader;
 import com.freva.masteroppgave.utils.reader.DataSetReader.Classification;
+import com.freva.masteroppgave.utils.reader.DataSetReader.DataSetEntry;
 import com.freva.masteroppgave.statistics.ClassificationCollection;
-import com.freva.masteroppgave.utils.tools.Parallel;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -26,6 +28,7 @@ public class LexicalClassifier {
     public static final List<Function<String, String>> CLASSIFIER_CHARACTER_FILTERS = Arrays.asList(
             Filters::removeInnerWordCharacters, Filters::removeNonSyntacticalText, CanonicalForm::correctWordViaCanonical);
     public static final Filters CLASSIFIER_FILTERS = new Filters(CLASSIFIER_STRING_FILTERS, CLASSIFIER_CHARACTER_FILTERS);
+    public static final Filters FAST_CLASSIFIER_FILTERS = new TweetNormalizer();
 
     private static final Map<String, File> TEST_SETS = new LinkedHashMap<String, File>() {{
         put("2013-TEST", new File("res/semeval/2013-2-test-gold-B.tsv"));
@@ -40,17 +43,23 @@ public class LexicalClassifier {
         ClassifierOptions.loadOptions(new File("res/data/options.pmi.json"));
 
         PriorPolarityLexicon priorPolarityLexicon = new PriorPolarityLexicon(new File("res/data/lexicon.pmi.json"));
-        Classifier classifier = new Classifier(priorPolarityLexicon, CLASSIFIER_FILTERS);
+        Classifier classifier = new Classifier(priorPolarityLexicon, FAST_CLASSIFIER_FILTERS);
 
         ClassificationCollection classificationCollection = new ClassificationCollection(Classification.values());
         for (Map.Entry<String, File> testSet : TEST_SETS.entrySet()) {
-            Parallel.For(new DataSetReader(testSet.getValue(), 3, 2), entry -> {
-                Classification predicted = classifier.classify(entry.getTweet());
-                classificationCollection.updateEvidence(testSet.getKey(), entry.getClassification(), predicted);
-            });
+            List<DataSetEntry> entries = new ArrayList<>();
+            new DataSetReader(testSet.getValue(), 3, 2).forEach(entries::add);
+
+            byte[] predicted = classifier.classifyBatch(entries.stream().map(DataSetEntry::getTweet));
+            for (int i = 0; i < entries.size(); i++) {
+                classificationCollection.updateEvidence(testSet.getKey(), entries.get(i).getClassification(),
+                        Classification.values()[predicted[i]]);
+            }
         }
 
         System.out.println(classificationCollection.getShortClassificationReport());
+        System.out.println("Prefilter skipped " + classifier.getPrefilter().getSkippedCount() + " of " +
+                classifier.getPrefilter().getCheckedCount() + " tweets");
         System.out.println("In: " + (System.currentTimeMillis() - startTime) + "ms");
     }
 }
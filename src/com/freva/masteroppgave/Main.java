@@ -1,8 +1,9 @@
 package com.freva.masteroppgave;
 
-import com.freva.masteroppgave.classifier.Classifier;
-import com.freva.masteroppgave.classifier.ClassifierOptions;
+import com.freva.masteroppgave.classifier.ReloadableClassifier;
+import com.freva.masteroppgave.classifier.ResultCache;
 import com.freva.masteroppgave.lexicon.LexiconCreator;
+import com.freva.masteroppgave.lexicon.container.BinaryLexicon;
 import com.freva.masteroppgave.lexicon.container.PriorPolarityLexicon;
 import com.freva.masteroppgave.preprocessing.filters.CanonicalForm;
 import com.freva.masteroppgave.preprocessing.filters.Filters;
@@ -14,9 +15,12 @@ import com.freva.masteroppgave.utils.reader.DataSetReader;
 import com.freva.masteroppgave.utils.reader.LineReader;
 import com.google.gson.reflect.TypeToken;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 
 public class Main {
@@ -35,30 +39,124 @@ public class Main {
     public static final List<Function<String, String>> TWEET_CHARACTER_FILTERS = Arrays.asList(
             Filters::removeInnerWordCharacters, Filters::removeNonAlphanumericalText, CanonicalForm::correctWordViaCanonical);
     public static final Filters TWEET_FILTERS = new Filters(TWEET_STRING_FILTERS, TWEET_CHARACTER_FILTERS);
+    private static final int RESULT_CACHE_CAPACITY = 1 << 16;
+    private static final long RELOAD_CHECK_INTERVAL = 2000;
+    private static final long OUTPUT_FLUSH_INTERVAL = 1000;
+    private static final int STREAM_BATCH_SIZE = 8192;
+    private static final int STREAM_BUFFER_SIZE = 1 << 20;
+    private static final String END_OF_INPUT = new String();
 
 
     public static void main(String[] args) {
         try {
-            continuousClassification(new File(args[0]), new File(args[1]), new File(args[2]));
+            final long flushInterval = args.length > 3 ? Long.parseLong(args[3]) : OUTPUT_FLUSH_INTERVAL;
+            continuousClassification(new File(args[0]), new File(args[1]), new File(args[2]), flushInterval);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     public static void continuousClassification(File lexicon, File options, File dictionary) throws IOException {
-        ClassifierOptions.loadOptions(options);
-        CanonicalForm.loadDictionary(dictionary);
+        continuousClassification(lexicon, options, dictionary, OUTPUT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * Classifies tweets read from stdin, one per line, and writes their sentiment values to stdout in the same order.
+     * Lines are read by a separate thread, and taken in batches of whatever complete lines it has read, up to
+     * {@link #STREAM_BATCH_SIZE}, so a batch never waits for a line that is still arriving. Each batch is scored on all
+     * cores. Output is flushed at most every flushInterval milliseconds while more lines are waiting, and always before
+     * waiting for more input, so interactive use sees its results right away. The lexicon, options
+     * and dictionary files are watched, and the model is replaced whenever they change, without stopping the
+     * classification.
+     *
+     * @param flushInterval Maximum milliseconds to hold back output while input keeps arriving
+     */
+    public static void continuousClassification(File lexicon, File options, File dictionary, long flushInterval)
+            throws IOException {
+        try (ReloadableClassifier classifier = new ReloadableClassifier(lexicon, options, dictionary,
+                RESULT_CACHE_CAPACITY, ResultCache.Key.RAW_TWEET)) {
+            classifier.watch(RELOAD_CHECK_INTERVAL);
+
+            BufferedReader input = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8),
+                    STREAM_BUFFER_SIZE);
+            PrintWriter output = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), STREAM_BUFFER_SIZE));
+
+            final AtomicReference<IOException> readError = new AtomicReference<>();
+            final BlockingQueue<String> lines = readLines(input, readError);
+
+            final long start = System.nanoTime();
+            final List<String> batch = new ArrayList<>(STREAM_BATCH_SIZE);
+            final double[] scores = new double[STREAM_BATCH_SIZE];
+            long numLines = 0, lastFlush = start;
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                try {
+                    batch.add(lines.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                lines.drainTo(batch, STREAM_BATCH_SIZE - 1);
+                if (batch.get(batch.size() - 1) == END_OF_INPUT) {
+                    batch.remove(batch.size() - 1);
+                    endOfInput = true;
+                }
 
-        PriorPolarityLexicon priorPolarityLexicon = new PriorPolarityLexicon(lexicon);
-        Classifier classifier = new Classifier(priorPolarityLexicon, LexicalClassifier.CLASSIFIER_FILTERS);
+                classifier.getClassifier().scoreBatch(batch, scores);
+                for (int i = 0; i < batch.size(); i++) {
+                    output.println(scores[i]);
+                }
+                numLines += batch.size();
+                batch.clear();
 
-        Scanner input = new Scanner(System.in);
-        while (input.hasNext()) {
-            String tweet = input.nextLine();
-            System.out.println(classifier.calculateSentiment(tweet));
+                final long now = System.nanoTime();
+                if (lines.isEmpty() || now - lastFlush >= flushInterval * 1000000) {
+                    output.flush();
+                    lastFlush = now;
+                }
+            }
+            output.flush();
+            if (readError.get() != null) {
+                throw readError.get();
+            }
+
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.println(String.format("Classified %d lines in %.1fs, %.0f lines/s", numLines, seconds,
+                    numLines / seconds));
+            System.err.println(classifier.getClassifier().getCache());
         }
     }
 
+    /**
+     * Starts a daemon thread reading lines from input into the returned queue, which holds at most a few batches of
+     * lines. {@link #END_OF_INPUT} is queued after the last line, also if reading fails, in which case the exception
+     * is stored in error.
+     */
+    private static BlockingQueue<String> readLines(BufferedReader input, AtomicReference<IOException> error) {
+        final BlockingQueue<String> lines = new ArrayBlockingQueue<>(4 * STREAM_BATCH_SIZE);
+        Thread reader = new Thread(() -> {
+            try {
+                try {
+                    for (String line; (line = input.readLine()) != null; ) {
+                        lines.put(line);
+                    }
+                } catch (IOException e) {
+                    error.set(e);
+                }
+                lines.put(END_OF_INPUT);
+            } catch (InterruptedException ignored) {
+            }
+        }, "input-reader");
+        reader.setDaemon(true);
+        reader.start();
+        return lines;
+    }
+
+    public static void compileLexicon(File lexiconFile, File binaryLexiconFile) throws IOException {
+        BinaryLexicon.compile(PriorPolarityLexicon.readLexicon(lexiconFile), binaryLexiconFile, true);
+    }
+
     public static void createLexicon(File nGramsFile, File dataSetFile, File lexiconFile, double maxErrorRate, double sentimentValueThreshold) throws IOException {
         Set<String> frequentNGrams = JSONUtils.fromJSONFile(nGramsFile, new TypeToken<Set<String>>(){});
         DataSetReader dataSetReader = new DataSetReader(dataSetFile, 1, 0);
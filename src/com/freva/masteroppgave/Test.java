@@ -3,6 +3,7 @@ package com.freva.masteroppgave;
 import com.freva.masteroppgave.classifier.Classifier;
 import com.freva.masteroppgave.classifier.ClassifierOptions;
 import com.freva.masteroppgave.lexicon.container.PriorPolarityLexicon;
+import com.freva.masteroppgave.preprocessing.filters.CanonicalForm;
 import com.freva.masteroppgave.preprocessing.filters.Filters;
 import com.freva.masteroppgave.statistics.ClassificationMetrics;
 import com.freva.masteroppgave.statistics.ClassificationOptimizer;
@@ -28,7 +29,16 @@ public class Test {
             Filters::removeFreeDigits, Filters::removeInnerWordCharacters, Filters::removeNonAlphanumericalText,
             String::trim, String::toLowerCase);
 
+    /**
+     * Runs the classification optimizer, or with the argument "equivalence" and optionally a dictionary file, runs
+     * {@link #checkFilterEquivalence(File)} on res/tweets/equivalence.txt and exits with status 1 on any mismatch.
+     */
     public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("equivalence")) {
+            if (args.length > 1) CanonicalForm.loadDictionary(new File(args[1]));
+            System.exit(checkFilterEquivalence(new File("res/tweets/equivalence.txt")) ? 0 : 1);
+        }
+
         ClassifierOptions.loadOptions(new File("res/data/options.pmi.json"));
 
         DataSetReader dataSetReader = new DataSetReader(new File("res/semeval/2013-2-train-full-B.tsv"), 3, 2);
@@ -110,4 +120,36 @@ public class Test {
 
         JSONUtils.toJSONFile(new File("res/tweets/distrib.txt"), outcomes, false);
     }
+
+
+    /**
+     * Compares {@link LexicalClassifier#FAST_CLASSIFIER_FILTERS} to the regex filter chain it replaces, both the
+     * filtered text and the sentiment value the AFINN lexicon gives each tweet, and prints every tweet they differ on.
+     *
+     * @param tweets File with one raw tweet per line
+     * @return True if the two agreed on every tweet
+     */
+    public static boolean checkFilterEquivalence(File tweets) throws IOException {
+        ClassifierOptions.loadOptions(new File("res/data/options.afinn.json"));
+        PriorPolarityLexicon polarityLexicon = new PriorPolarityLexicon(new File("res/data/lexicon.afinn.json"));
+        Classifier expectedClassifier = new Classifier(polarityLexicon, LexicalClassifier.CLASSIFIER_FILTERS);
+        Classifier actualClassifier = new Classifier(polarityLexicon, LexicalClassifier.FAST_CLASSIFIER_FILTERS);
+
+        int lines = 0, mismatches = 0;
+        for (String line : new LineReader(tweets)) {
+            String expected = LexicalClassifier.CLASSIFIER_FILTERS.apply(line);
+            String actual = LexicalClassifier.FAST_CLASSIFIER_FILTERS.apply(line);
+            double expectedSentiment = expectedClassifier.calculateSentiment(line);
+            double actualSentiment = actualClassifier.calculateSentiment(line);
+            if (!expected.equals(actual) || Double.compare(expectedSentiment, actualSentiment) != 0) {
+                System.out.println(line + "\n\texpected: " + expected + " (" + expectedSentiment + ")" +
+                        "\n\tactual:   " + actual + " (" + actualSentiment + ")");
+                mismatches++;
+            }
+            lines++;
+        }
+
+        System.out.println(mismatches + " mismatches in " + lines + " lines");
+        return mismatches == 0;
+    }
 }
@@ -1,33 +1,140 @@
 package com.freva.masteroppgave.classifier;
 
-import com.freva.masteroppgave.classifier.sentence.LexicalParser;
-import com.freva.masteroppgave.classifier.sentence.LexicalToken;
 import com.freva.masteroppgave.classifier.ClassifierOptions.Variable;
 import com.freva.masteroppgave.lexicon.container.TokenTrie;
 import com.freva.masteroppgave.lexicon.container.PriorPolarityLexicon;
 import com.freva.masteroppgave.preprocessing.filters.Filters;
+import com.freva.masteroppgave.preprocessing.filters.TokenBuffer;
+import com.freva.masteroppgave.preprocessing.filters.TweetNormalizer;
 import com.freva.masteroppgave.utils.reader.DataSetReader.Classification;
+import com.freva.masteroppgave.utils.tools.Parallel;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Classifier {
+    private static final ThreadLocal<TokenBuffer> tokenBuffers = ThreadLocal.withInitial(TokenBuffer::new);
+
     private final PriorPolarityLexicon lexicon;
     private final TokenTrie phraseTree;
     private final Filters filters;
+    private final CompiledOptions options;
+    private final SentimentScorer scorer;
+    private final SubjectivityPrefilter prefilter;
+    private final boolean skipNeutral;
+    private final ResultCache cache;
+    private volatile Classifier degraded;
+
+    /**
+     * Creates classifier. If filters is a {@link TweetNormalizer}, a {@link SubjectivityPrefilter} is built for the
+     * lexicon, and tweets that it proves can not contain any subjective phrase are given sentiment value 0 without
+     * being filtered or scored.
+     */
+    public Classifier(PriorPolarityLexicon lexicon, Filters filters, CompiledOptions options) {
+        this(lexicon, lexicon.getPhraseTree(), filters, createPrefilter(lexicon, filters), options, null);
+    }
 
+    /**
+     * Creates classifier using a snapshot of the options currently loaded in {@link ClassifierOptions}.
+     */
     public Classifier(PriorPolarityLexicon lexicon, Filters filters) {
-        this.lexicon = lexicon;
-        this.filters = filters;
-        this.phraseTree = new TokenTrie(lexicon.getSubjectiveWords());
+        this(lexicon, filters, ClassifierOptions.compileOptions());
     }
 
     public Classifier(PriorPolarityLexicon lexicon) {
         this(lexicon, null);
     }
 
+    private Classifier(PriorPolarityLexicon lexicon, TokenTrie phraseTree, Filters filters,
+                       SubjectivityPrefilter prefilter, CompiledOptions options, ResultCache cache) {
+        this.lexicon = lexicon;
+        this.phraseTree = phraseTree;
+        this.filters = filters;
+        this.options = options;
+        this.scorer = new SentimentScorer(lexicon, phraseTree, options);
+        this.prefilter = prefilter;
+        // Tweets without subjective phrases sum to 0 only as long as 0 times any intensification is still 0
+        this.skipNeutral = prefilter != null && Double.isFinite(options.getMaxIntensification());
+        this.cache = cache;
+    }
+
+    /**
+     * Returns a classifier that shares lexicon, phrase tree and filters with this one, but uses different options.
+     * The result cache, if any, is not shared, as its values depend on the options.
+     *
+     * @param options Options to use in the new classifier
+     * @return New Classifier instance
+     */
+    public Classifier withOptions(CompiledOptions options) {
+        return new Classifier(lexicon, phraseTree, filters, prefilter, options, null);
+    }
+
+    /**
+     * Returns a classifier that shares lexicon, phrase tree and options with this one, but filters tweets with
+     * different filters. The result cache, if any, is not shared, as its values depend on the filters.
+     *
+     * @param filters Filters to use in the new classifier, or null to score raw tweets
+     * @return New Classifier instance
+     */
+    public Classifier withFilters(Filters filters) {
+        return new Classifier(lexicon, phraseTree, filters, createPrefilter(lexicon, filters), options, null);
+    }
+
+    /**
+     * Returns a classifier identical to this one that looks up sentiment values in cache before calculating them, and
+     * stores the calculated ones in it. The cache should not be shared with classifiers using a different lexicon,
+     * options or filters.
+     *
+     * @param cache Cache to use, or null to not use any
+     * @return New Classifier instance
+     */
+    public Classifier withCache(ResultCache cache) {
+        return new Classifier(lexicon, phraseTree, filters, prefilter, options, cache);
+    }
+
+    /**
+     * Returns the copy of this classifier that filters tweets with {@link TweetNormalizer#createDegraded()}, which
+     * {@link LoadSheddingClassifier} switches to when it falls behind. The copy is built once, by the first call, so
+     * holders that swap in new classifiers (f.ex. {@link ReloadableClassifier}) build it before publishing them.
+     *
+     * @return Degraded copy of this classifier, without result cache
+     */
+    public Classifier getDegraded() {
+        Classifier copy = degraded;
+        if (copy == null) {
+            synchronized (this) {
+                copy = degraded;
+                if (copy == null) {
+                    degraded = copy = withFilters(TweetNormalizer.createDegraded());
+                }
+            }
+        }
+        return copy;
+    }
+
+    public ResultCache getCache() {
+        return cache;
+    }
+
+    public CompiledOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @return Prefilter used to skip tweets without subjective phrases, or null if filters are not a
+     * {@link TweetNormalizer}. Shared with all classifiers created by {@link #withOptions(CompiledOptions)}.
+     */
+    public SubjectivityPrefilter getPrefilter() {
+        return prefilter;
+    }
+
     /**
      * Classifies the tweet into one of three classes (negative, neutral or positive) depending on the sentiment value
-     * of the tweet and the thresholds specified in the ClassifierOptions
+     * of the tweet and the thresholds specified in the classifier's options
      *
      * @param tweet String tweet to classify
      * @return Sentiment classification (negative, neutral or positive)
@@ -36,46 +143,117 @@ public class Classifier {
         final double sentimentValue = calculateSentiment(tweet);
 
         return Classification.classifyFromThresholds(sentimentValue,
-                ClassifierOptions.getVariable(Variable.CLASSIFICATION_THRESHOLD_LOWER),
-                ClassifierOptions.getVariable(Variable.CLASSIFICATION_THRESHOLD_HIGHER));
+                options.getVariable(Variable.CLASSIFICATION_THRESHOLD_LOWER),
+                options.getVariable(Variable.CLASSIFICATION_THRESHOLD_HIGHER));
     }
 
     public double calculateSentiment(String tweet) {
-        if (filters != null) {
-            tweet = filters.apply(tweet);
+        if (skipNeutral && !prefilter.mightBeSubjective(tweet)) {
+            return 0;
         }
 
-        List<LexicalToken> lexicalTokens = LexicalParser.lexicallyParseTweet(tweet, phraseTree);
-        for (int i = 0; i < lexicalTokens.size(); i++) {
-            LexicalToken token = lexicalTokens.get(i);
-            String phrase = token.getPhrase();
-
-            if (lexicon.hasToken(phrase)) {
-                token.setLexicalValue(lexicon.getTokenPolarity(phrase));
-
-            } else if (ClassifierOptions.isNegation(phrase)) {
-                propagateNegation(lexicalTokens, i);
+        if (cache == null) {
+            return filters == null ? scorer.calculateSentiment(tweet) :
+                    scorer.calculateSentiment(filters.apply(tweet, tokenBuffers.get()));
+        }
 
-            } else if (ClassifierOptions.isIntensifier(phrase)) {
-                intensifyNext(lexicalTokens, i, ClassifierOptions.getIntensifierValue(phrase));
+        if (filters != null && cache.getKey() == ResultCache.Key.FILTERED_TWEET) {
+            final TokenBuffer filtered = filters.apply(tweet, tokenBuffers.get());
+            final long fingerprint = ResultCache.fingerprint(filtered);
+            double sentimentValue = cache.get(fingerprint);
+            if (Double.isNaN(sentimentValue)) {
+                sentimentValue = scorer.calculateSentiment(filtered);
+                cache.put(fingerprint, sentimentValue);
             }
+            return sentimentValue;
         }
-        return lexicalTokens.stream().mapToDouble(LexicalToken::getSentimentValue).sum();
-    }
 
-    private void propagateNegation(List<LexicalToken> lexicalTokens, int index) {
-        final double negationScopeLength = ClassifierOptions.getVariable(ClassifierOptions.Variable.NEGATION_SCOPE_LENGTH);
-        for (int i = index + 1; i <= index + negationScopeLength && i < lexicalTokens.size(); i++) {
-            lexicalTokens.get(i).setInNegatedContext(true);
-            if (lexicalTokens.get(i).isAtTheEndOfSentence()) {
-                break;
-            }
+        final long fingerprint = ResultCache.fingerprint(tweet);
+        double sentimentValue = cache.get(fingerprint);
+        if (Double.isNaN(sentimentValue)) {
+            sentimentValue = filters == null ? scorer.calculateSentiment(tweet) :
+                    scorer.calculateSentiment(filters.apply(tweet, tokenBuffers.get()));
+            cache.put(fingerprint, sentimentValue);
         }
+        return sentimentValue;
+    }
+
+
+    /**
+     * Calculates sentiment value of every tweet in parallel on as many cores as available.
+     *
+     * @param tweets Tweets to calculate sentiment value for
+     * @return Sentiment values, in the same order as tweets
+     */
+    public double[] scoreBatch(List<String> tweets) {
+        double[] scores = new double[tweets.size()];
+        scoreBatch(tweets, scores);
+        return scores;
+    }
+
+    public double[] scoreBatch(String[] tweets) {
+        return scoreBatch(Arrays.asList(tweets));
+    }
+
+    public double[] scoreBatch(Stream<String> tweets) {
+        return scoreBatch(tweets.collect(Collectors.toList()));
+    }
+
+    /**
+     * Calculates sentiment value of every tweet in parallel and writes them into a preallocated array. Each worker
+     * writes to its own indices, so no locking is needed.
+     *
+     * @param tweets Tweets to calculate sentiment value for
+     * @param scores Array to write sentiment values into, scores[i] is sentiment value of tweets.get(i)
+     */
+    public void scoreBatch(List<String> tweets, double[] scores) {
+        checkBatchSize(tweets, scores.length);
+        final List<String> indexed = tweets instanceof RandomAccess ? tweets : new ArrayList<>(tweets);
+        Parallel.For(0, indexed.size(), i -> scores[i] = calculateSentiment(indexed.get(i)));
+    }
+
+
+    /**
+     * Classifies every tweet in parallel on as many cores as available.
+     *
+     * @param tweets Tweets to classify
+     * @return {@link Classification#ordinal()} of the class of each tweet, in the same order as tweets
+     */
+    public byte[] classifyBatch(List<String> tweets) {
+        byte[] classes = new byte[tweets.size()];
+        classifyBatch(tweets, classes);
+        return classes;
+    }
+
+    public byte[] classifyBatch(String[] tweets) {
+        return classifyBatch(Arrays.asList(tweets));
+    }
+
+    public byte[] classifyBatch(Stream<String> tweets) {
+        return classifyBatch(tweets.collect(Collectors.toList()));
+    }
+
+    /**
+     * Classifies every tweet in parallel and writes the {@link Classification#ordinal()} of their classes into a
+     * preallocated array.
+     *
+     * @param tweets  Tweets to classify
+     * @param classes Array to write class ordinals into, classes[i] is class of tweets.get(i)
+     */
+    public void classifyBatch(List<String> tweets, byte[] classes) {
+        checkBatchSize(tweets, classes.length);
+        final List<String> indexed = tweets instanceof RandomAccess ? tweets : new ArrayList<>(tweets);
+        Parallel.For(0, indexed.size(), i -> classes[i] = (byte) classify(indexed.get(i)).ordinal());
+    }
+
+    private static SubjectivityPrefilter createPrefilter(PriorPolarityLexicon lexicon, Filters filters) {
+        if (!(filters instanceof TweetNormalizer)) return null;
+        return new SubjectivityPrefilter(lexicon, ((TweetNormalizer) filters).getDictionary());
     }
 
-    private void intensifyNext(List<LexicalToken> lexicalTokens, int index, double intensification) {
-        if (!lexicalTokens.get(index).isAtTheEndOfSentence()) {
-            lexicalTokens.get(index + 1).intensifyToken(intensification);
+    private static void checkBatchSize(List<String> tweets, int resultLength) {
+        if (tweets.size() > resultLength) {
+            throw new IllegalArgumentException("Result array holds " + resultLength + " values, but batch has " + tweets.size() + " tweets");
         }
     }
 }
@@ -1,5 +1,6 @@
 package com.freva.masteroppgave.classifier;
 
+import com.freva.masteroppgave.lexicon.container.StringDoubleMap;
 import com.freva.masteroppgave.utils.FileUtils;
 import com.freva.masteroppgave.utils.JSONUtils;
 import com.google.gson.reflect.TypeToken;
@@ -13,6 +14,7 @@ import java.util.Set;
 public class ClassifierOptions {
     private static Map<String, Double> options;
     private static Map<String, Double> intensifiers;
+    private static StringDoubleMap intensifierTable;
     private static Set<String> negators;
     private static Set<String> stopWords;
 
@@ -24,13 +26,41 @@ public class ClassifierOptions {
      * @throws IOException
      */
     public static void loadOptions(File file) throws IOException {
-        Settings words = JSONUtils.fromJSON(FileUtils.readEntireFileIntoString(file), new TypeToken<Settings>() {});
+        Settings words = readSettings(file);
         options = words.options;
         intensifiers = words.intensifiers;
+        intensifierTable = new StringDoubleMap(words.intensifiers);
         negators = words.negators;
         stopWords = words.stopWords;
     }
 
+    /**
+     * Compiles the currently loaded options into an immutable snapshot. Later changes made through
+     * {@link #setVariable(Variable, double)} or {@link #loadOptions(File)} do not affect the returned instance.
+     *
+     * @return Immutable snapshot of the current options
+     */
+    public static CompiledOptions compileOptions() {
+        return new CompiledOptions(options, intensifiers, negators, stopWords);
+    }
+
+    /**
+     * Reads options from a JSON file (same format as {@link #loadOptions(File)}) into an immutable snapshot without
+     * changing the globally loaded options.
+     *
+     * @param file File containing the options
+     * @return Immutable snapshot of the options in file
+     * @throws IOException
+     */
+    public static CompiledOptions compileOptions(File file) throws IOException {
+        Settings words = readSettings(file);
+        return new CompiledOptions(words.options, words.intensifiers, words.negators, words.stopWords);
+    }
+
+    private static Settings readSettings(File file) throws IOException {
+        return JSONUtils.fromJSON(FileUtils.readEntireFileIntoString(file), new TypeToken<Settings>() {});
+    }
+
     public static boolean containsStopWord(String[] words) {
         for (String word : words) {
             if (isStopWord(word)) {
@@ -72,11 +102,11 @@ public class ClassifierOptions {
     }
 
     public static boolean isIntensifier(String word) {
-        return intensifiers.containsKey(word);
+        return intensifierTable.containsKey(word);
     }
 
     public static double getIntensifierValue(String word) {
-        final double intensifier = intensifiers.getOrDefault(word, 0d);
+        final double intensifier = intensifierTable.lookup(word, 0);
         final double mult = intensifier > 0 ? getVariable(Variable.AMPLIFIER_SCALAR) : getVariable(Variable.DOWNTONER_SCALAR);
         return mult * intensifier;
     }
@@ -0,0 +1,132 @@
+package com.freva.masteroppgave.classifier;
+
+import com.freva.masteroppgave.classifier.ClassifierOptions.Variable;
+import com.freva.masteroppgave.lexicon.container.StringDoubleMap;
+
+import java.util.*;
+
+public class CompiledOptions {
+    private final double[] variables;
+    private final Map<String, Double> intensifiers;
+    private final StringDoubleMap intensifierValues;
+    private final Set<String> negators;
+    private final Set<String> stopWords;
+
+    /**
+     * Immutable snapshot of classifier options. Variables are stored in an array indexed by {@link Variable#ordinal()}
+     * and intensifier values are pre-multiplied by their amplifier/downtoner scalar, so reading them does not require
+     * any string hashing or unboxing. The words are looked up by id through {@link TokenRoles}, which registers them in
+     * the vocabulary of the lexicon they are used with. Several differently tuned instances can be used concurrently.
+     *
+     * @param options      Map of {@link Variable} names to their values
+     * @param intensifiers Intensifier words and their intensification values
+     * @param negators     Negation words
+     * @param stopWords    Stop words
+     */
+    public CompiledOptions(Map<String, Double> options, Map<String, Double> intensifiers, Set<String> negators,
+                           Set<String> stopWords) {
+        this(compileVariables(options), intensifiers, negators, stopWords);
+    }
+
+    private CompiledOptions(double[] variables, Map<String, Double> intensifiers, Set<String> negators,
+                            Set<String> stopWords) {
+        this.variables = variables;
+        this.intensifiers = intensifiers == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(intensifiers));
+        this.negators = negators == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(negators));
+        this.stopWords = stopWords == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(stopWords));
+
+        StringDoubleMap intensifierValues = new StringDoubleMap(this.intensifiers.size());
+        for (Map.Entry<String, Double> intensifier : this.intensifiers.entrySet()) {
+            final double mult = intensifier.getValue() > 0 ? getVariable(Variable.AMPLIFIER_SCALAR) : getVariable(Variable.DOWNTONER_SCALAR);
+            intensifierValues.put(intensifier.getKey(), mult * intensifier.getValue());
+        }
+        this.intensifierValues = intensifierValues;
+    }
+
+
+    public double getVariable(Variable variable) {
+        return variables[variable.ordinal()];
+    }
+
+    /**
+     * Returns a copy of these options with a single variable changed, leaves this instance untouched.
+     *
+     * @param variable Variable to change
+     * @param value    New value of the variable
+     * @return New CompiledOptions instance
+     */
+    public CompiledOptions withVariable(Variable variable, double value) {
+        double[] variables = this.variables.clone();
+        variables[variable.ordinal()] = value;
+        return new CompiledOptions(variables, intensifiers, negators, stopWords);
+    }
+
+
+    public boolean isStopWord(String word) {
+        return stopWords.contains(word);
+    }
+
+    public boolean isNegation(String word) {
+        return negators.contains(word);
+    }
+
+    public boolean isIntensifier(String word) {
+        return intensifierValues.containsKey(word);
+    }
+
+    public double getIntensifierValue(String word) {
+        return intensifierValues.lookup(word, 0);
+    }
+
+
+    Set<String> getStopWords() {
+        return stopWords;
+    }
+
+    Set<String> getNegators() {
+        return negators;
+    }
+
+    Set<String> getIntensifiers() {
+        return intensifiers.keySet();
+    }
+
+
+    /**
+     * @return Upper bound of the absolute value a lexical value can be multiplied with by sentence punctuation and
+     * intensifiers
+     */
+    double getMaxIntensification() {
+        final double[] maxIntensifierValue = {1};
+        intensifierValues.forEach((word, value) -> maxIntensifierValue[0] = Math.max(maxIntensifierValue[0], Math.abs(value)));
+        final double maxPunctuation = Math.max(1, Math.max(Math.abs(getVariable(Variable.EXCLAMATION_INTENSIFIER)),
+                Math.abs(getVariable(Variable.QUESTION_INTENSIFIER))));
+        return maxPunctuation * maxIntensifierValue[0];
+    }
+
+
+    public Map<String, Double> getOptions() {
+        Map<String, Double> options = new HashMap<>();
+        for (Variable variable : Variable.values()) {
+            options.put(variable.name(), getVariable(variable));
+        }
+        return options;
+    }
+
+    public String toString() {
+        return getOptions().toString();
+    }
+
+
+    private static double[] compileVariables(Map<String, Double> options) {
+        double[] variables = new double[Variable.values().length];
+        for (Variable variable : Variable.values()) {
+            Double value = options.get(variable.name());
+            if (value == null) {
+                throw new IllegalArgumentException("Missing value for option: " + variable.name());
+            }
+            variables[variable.ordinal()] = value;
+        }
+        return variables;
+    }
+}
@@ -0,0 +1,103 @@
+package com.freva.masteroppgave.classifier;
+
+import com.freva.masteroppgave.classifier.ClassifierOptions.Variable;
+import com.freva.masteroppgave.lexicon.container.PriorPolarityLexicon;
+import com.freva.masteroppgave.preprocessing.filters.Filters;
+import com.freva.masteroppgave.preprocessing.filters.TokenBuffer;
+import com.freva.masteroppgave.utils.reader.DataSetReader.Classification;
+import com.freva.masteroppgave.utils.tools.Parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Scores tweets against several lexicons (each with its own options) at once. Every tweet is filtered only once, and
+ * the same {@link TokenBuffer} is then scored by each lexicon's {@link SentimentScorer}, which looks its words up in
+ * the lexicon's own vocabulary, so the results are the same as those of separate {@link Classifier}s using the same
+ * filters.
+ */
+public class EnsembleClassifier {
+    private static final ThreadLocal<TokenBuffer> tokenBuffers = ThreadLocal.withInitial(TokenBuffer::new);
+
+    private final Filters filters;
+    private final SentimentScorer[] scorers;
+    private final CompiledOptions[] options;
+
+    /**
+     * @param filters  Filters to apply to tweets before scoring them, or null to score raw tweets
+     * @param lexicons Lexicons to score tweets against
+     * @param options  Options to use with each lexicon, options.get(i) is used with lexicons.get(i)
+     */
+    public EnsembleClassifier(Filters filters, List<PriorPolarityLexicon> lexicons, List<CompiledOptions> options) {
+        if (lexicons.size() != options.size()) {
+            throw new IllegalArgumentException("Got " + lexicons.size() + " lexicons, but " + options.size() + " options");
+        }
+
+        this.filters = filters;
+        this.scorers = new SentimentScorer[lexicons.size()];
+        this.options = options.toArray(new CompiledOptions[options.size()]);
+        for (int i = 0; i < scorers.length; i++) {
+            PriorPolarityLexicon lexicon = lexicons.get(i);
+            scorers[i] = new SentimentScorer(lexicon, lexicon.getPhraseTree(), this.options[i]);
+        }
+    }
+
+    /**
+     * @return Number of lexicons in the ensemble
+     */
+    public int size() {
+        return scorers.length;
+    }
+
+
+    /**
+     * @param tweet Tweet to calculate sentiment values for
+     * @return Sentiment value of tweet according to each of the lexicons, in the same order as the lexicons
+     */
+    public double[] calculateSentiments(String tweet) {
+        double[] scores = new double[scorers.length];
+        calculateSentiments(tweet, scores, 0);
+        return scores;
+    }
+
+    /**
+     * Same as {@link #calculateSentiments(String)}, but writes the values into scores, starting at offset.
+     */
+    public void calculateSentiments(String tweet, double[] scores, int offset) {
+        final TokenBuffer filtered = filters == null ? tokenBuffers.get().set(tweet) :
+                filters.apply(tweet, tokenBuffers.get());
+        for (int i = 0; i < scorers.length; i++) {
+            scores[offset + i] = scorers[i].calculateSentiment(filtered);
+        }
+    }
+
+    /**
+     * @param tweet Tweet to classify
+     * @return Classification of tweet according to each of the lexicons and their thresholds
+     */
+    public Classification[] classify(String tweet) {
+        final double[] scores = calculateSentiments(tweet);
+        Classification[] classes = new Classification[scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            classes[i] = Classification.classifyFromThresholds(scores[i],
+                    options[i].getVariable(Variable.CLASSIFICATION_THRESHOLD_LOWER),
+                    options[i].getVariable(Variable.CLASSIFICATION_THRESHOLD_HIGHER));
+        }
+        return classes;
+    }
+
+
+    /**
+     * Calculates sentiment values of every tweet in parallel on as many cores as available.
+     *
+     * @param tweets Tweets to calculate sentiment values for
+     * @return Array of size tweets.size() * {@link #size()}, where the values of tweets.get(i) start at i * size()
+     */
+    public double[] scoreBatch(List<String> tweets) {
+        final List<String> indexed = tweets instanceof RandomAccess ? tweets : new ArrayList<>(tweets);
+        final double[] scores = new double[indexed.size() * scorers.length];
+        Parallel.For(0, indexed.size(), i -> calculateSentiments(indexed.get(i), scores, i * scorers.length));
+        return scores;
+    }
+}
@@ -0,0 +1,176 @@
+package com.freva.masteroppgave.classifier;
+
+import com.freva.masteroppgave.classifier.ClassifierOptions.Variable;
+import com.freva.masteroppgave.preprocessing.filters.TweetNormalizer;
+import com.freva.masteroppgave.utils.reader.DataSetReader.Classification;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Classifier that sheds load by switching to a cheaper, slightly less accurate, pipeline when it falls behind. Next
+ * to the full classifier it uses its degraded copy ({@link Classifier#getDegraded()}), which filters with
+ * {@link TweetNormalizer#createDegraded()} and so skips HTML unescaping, emoji parsing, Unicode normalization and
+ * dictionary correction.
+ *
+ * The degraded mode is entered when the queue depth reported by the caller or the average time it takes to classify
+ * a tweet in full mode exceeds its limit, and left once both are back under half their limit. While degraded, every
+ * {@link #PROBE_INTERVAL}th tweet is still classified in full mode to keep measuring its latency. Every result records
+ * the mode that produced it.
+ */
+public class LoadSheddingClassifier {
+    public static final int PROBE_INTERVAL = 64;
+    private static final double LATENCY_SMOOTHING = 1.0 / 64;
+
+    private final Supplier<Classifier> source;
+    private final IntSupplier queueDepth;
+    private final int maxQueueDepth;
+    private final long maxLatency;
+
+    private volatile Mode mode = Mode.FULL;
+    private volatile double latency;
+
+    private final AtomicLong probes = new AtomicLong();
+    private final LongAdder fullResults = new LongAdder();
+    private final LongAdder degradedResults = new LongAdder();
+    private final LongAdder modeSwitches = new LongAdder();
+
+    /**
+     * @param classifier    Full classifier, must filter with a {@link TweetNormalizer}
+     * @param queueDepth    Number of tweets waiting to be classified, or null if the caller has no queue
+     * @param maxQueueDepth Queue depth above which to degrade
+     * @param maxLatency    Average nanoseconds per tweet in full mode above which to degrade
+     */
+    public LoadSheddingClassifier(Classifier classifier, IntSupplier queueDepth, int maxQueueDepth, long maxLatency) {
+        this(() -> classifier, queueDepth, maxQueueDepth, maxLatency);
+    }
+
+    /**
+     * Same as {@link #LoadSheddingClassifier(Classifier, IntSupplier, int, long)}, but looks up the full classifier on
+     * every call, f.ex. {@link ReloadableClassifier#getClassifier()}, which builds the degraded copy of every model
+     * before swapping it in.
+     */
+    public LoadSheddingClassifier(Supplier<Classifier> source, IntSupplier queueDepth, int maxQueueDepth,
+                                  long maxLatency) {
+        this.source = source;
+        this.queueDepth = queueDepth == null ? () -> 0 : queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.maxLatency = maxLatency;
+    }
+
+
+    /**
+     * @param tweet Tweet to classify
+     * @return Sentiment value and classification of tweet, together with the mode that produced them
+     */
+    public Result classify(String tweet) {
+        final Classifier full = source.get();
+        if (updateMode() == Mode.DEGRADED && probes.getAndIncrement() % PROBE_INTERVAL != 0) {
+            final Classifier degraded = full.getDegraded();
+            degradedResults.increment();
+            return new Result(degraded, degraded.calculateSentiment(tweet), Mode.DEGRADED);
+        }
+
+        final long start = System.nanoTime();
+        final double sentimentValue = full.calculateSentiment(tweet);
+        // Racing updates may lose a sample, which does not matter for a moving average
+        latency += (System.nanoTime() - start - latency) * LATENCY_SMOOTHING;
+        fullResults.increment();
+        return new Result(full, sentimentValue, Mode.FULL);
+    }
+
+    public double calculateSentiment(String tweet) {
+        return classify(tweet).getSentimentValue();
+    }
+
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return Moving average of nanoseconds per tweet classified in full mode
+     */
+    public double getLatency() {
+        return latency;
+    }
+
+    public long getFullResults() {
+        return fullResults.sum();
+    }
+
+    public long getDegradedResults() {
+        return degradedResults.sum();
+    }
+
+    /**
+     * @return Number of times the mode has changed, in either direction
+     */
+    public long getModeSwitches() {
+        return modeSwitches.sum();
+    }
+
+    public String toString() {
+        return "LoadSheddingClassifier{mode=" + mode + ", full=" + getFullResults() + ", degraded=" +
+                getDegradedResults() + ", switches=" + getModeSwitches() + ", latency=" + (long) latency + "ns}";
+    }
+
+
+    private Mode updateMode() {
+        final int depth = queueDepth.getAsInt();
+        final Mode current = mode;
+        if (current == Mode.FULL && (depth > maxQueueDepth || latency > maxLatency)) {
+            return switchMode(current, Mode.DEGRADED);
+        }
+        if (current == Mode.DEGRADED && depth <= maxQueueDepth / 2 && latency <= maxLatency / 2) {
+            return switchMode(current, Mode.FULL);
+        }
+        return current;
+    }
+
+    private synchronized Mode switchMode(Mode from, Mode to) {
+        if (mode == from) {
+            mode = to;
+            modeSwitches.increment();
+        }
+        return mode;
+    }
+
+
+    public enum Mode {
+        FULL, DEGRADED
+    }
+
+    public static class Result {
+        private final double sentimentValue;
+        private final Classification classification;
+        private final Mode mode;
+
+        private Result(Classifier classifier, double sentimentValue, Mode mode) {
+            final CompiledOptions options = classifier.getOptions();
+            this.sentimentValue = sentimentValue;
+            this.classification = Classification.classifyFromThresholds(sentimentValue,
+                    options.getVariable(Variable.CLASSIFICATION_THRESHOLD_LOWER),
+                    options.getVariable(Variable.CLASSIFICATION_THRESHOLD_HIGHER));
+            this.mode = mode;
+        }
+
+        public double getSentimentValue() {
+            return sentimentValue;
+        }
+
+        public Classification getClassification() {
+            return classification;
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public String toString() {
+            return sentimentValue + "\t" + classification + "\t" + mode;
+        }
+    }
+}
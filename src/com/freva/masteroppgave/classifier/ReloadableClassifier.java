@@ -0,0 +1,198 @@
+package com.freva.masteroppgave.classifier;
+
+import com.freva.masteroppgave.lexicon.container.PriorPolarityLexicon;
+import com.freva.masteroppgave.preprocessing.filters.CanonicalForm;
+import com.freva.masteroppgave.preprocessing.filters.TweetNormalizer;
+import com.freva.masteroppgave.utils.reader.DataSetReader.Classification;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds a {@link Classifier} built from a lexicon, options and canonical dictionary file, and replaces it when any of
+ * the files change. A new model (lexicon, phrase tree, options, dictionary, prefilter, cache and the degraded copy used
+ * by {@link LoadSheddingClassifier}) is built completely on the reloading thread while the old one keeps serving, and
+ * is then published with a single atomic swap. Every call classifies its tweet with the model it got at the start of
+ * the call, so no tweet is ever scored with a mix of an old and a new lexicon, options or dictionary, and
+ * classifications in progress are never blocked by a reload.
+ *
+ * The dictionary is given to the model's own {@link TweetNormalizer} instead of being loaded into
+ * {@link CanonicalForm}, so reloading never affects other users of the loaded dictionary. If a reload fails (f.ex.
+ * because a file is being rewritten) the old model is kept, and the reload is retried on the next change.
+ */
+public class ReloadableClassifier implements Closeable {
+    private final File lexiconFile;
+    private final File optionsFile;
+    private final File dictionaryFile;
+    private final int cacheCapacity;
+    private final ResultCache.Key cacheKey;
+
+    private final AtomicReference<Classifier> classifier = new AtomicReference<>();
+    private final Object reloadLock = new Object();
+    private long[] fileStamps;
+    private long[] failedFileStamps;
+
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder failedReloads = new LongAdder();
+    private volatile Thread watcher;
+
+    public ReloadableClassifier(File lexiconFile, File optionsFile, File dictionaryFile) throws IOException {
+        this(lexiconFile, optionsFile, dictionaryFile, 0, null);
+    }
+
+    /**
+     * Creates the holder and loads the first model.
+     *
+     * @param lexiconFile    Lexicon file, binary or JSON
+     * @param optionsFile    Classifier options file
+     * @param dictionaryFile Canonical dictionary file
+     * @param cacheCapacity  Capacity of the {@link ResultCache} every model gets, or 0 for no cache
+     * @param cacheKey       What the cache is keyed by, ignored if cacheCapacity is 0
+     * @throws IOException If the first model could not be loaded
+     */
+    public ReloadableClassifier(File lexiconFile, File optionsFile, File dictionaryFile, int cacheCapacity,
+                                ResultCache.Key cacheKey) throws IOException {
+        this.lexiconFile = lexiconFile;
+        this.optionsFile = optionsFile;
+        this.dictionaryFile = dictionaryFile;
+        this.cacheCapacity = cacheCapacity;
+        this.cacheKey = cacheKey;
+        reload();
+    }
+
+
+    /**
+     * @return The current model. Callers that need several calls to use the same model should hold on to it.
+     */
+    public Classifier getClassifier() {
+        return classifier.get();
+    }
+
+    public double calculateSentiment(String tweet) {
+        return classifier.get().calculateSentiment(tweet);
+    }
+
+    public Classification classify(String tweet) {
+        return classifier.get().classify(tweet);
+    }
+
+
+    /**
+     * Builds a new model from the files and swaps it in. The files are stamped before they are read, so changes made
+     * while reading are picked up by the next {@link #reloadIfModified()}.
+     *
+     * @throws IOException If any of the files could not be read, in which case the current model is kept
+     */
+    public void reload() throws IOException {
+        synchronized (reloadLock) {
+            final long[] stamps = getFileStamps();
+            final Classifier next;
+            try {
+                next = load();
+            } catch (Throwable e) {
+                failedFileStamps = stamps;
+                failedReloads.increment();
+                throw e;
+            }
+            classifier.set(next);
+            fileStamps = stamps;
+            reloads.increment();
+        }
+    }
+
+    /**
+     * Reloads the model if any of the files changed since the last reload. Files that failed to load are not retried
+     * until they change again.
+     *
+     * @return True if any of the files had changed since the last reload or failed attempt, and the model was reloaded
+     * @throws IOException If any of the files could not be read, in which case the current model is kept
+     */
+    public boolean reloadIfModified() throws IOException {
+        synchronized (reloadLock) {
+            final long[] stamps = getFileStamps();
+            if (Arrays.equals(fileStamps, stamps) || Arrays.equals(failedFileStamps, stamps)) {
+                return false;
+            }
+            reload();
+            return true;
+        }
+    }
+
+    /**
+     * Starts a daemon thread checking the files for changes every interval milliseconds, reloading the model when
+     * they do. Failed reloads are reported once, and retried when the files change again. Does nothing if the files
+     * are already watched.
+     *
+     * @param interval Milliseconds between checks
+     */
+    public synchronized void watch(long interval) {
+        if (watcher != null) return;
+
+        watcher = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                try {
+                    reloadIfModified();
+                } catch (Throwable e) {
+                    System.err.println("Failed to reload classifier from " + lexiconFile + ", " + optionsFile +
+                            " and " + dictionaryFile + ", keeping the current model");
+                    e.printStackTrace();
+                }
+            }
+        }, "classifier-reloader");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stops watching the files, the current model can still be used
+     */
+    public synchronized void close() {
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
+
+    /**
+     * @return Number of models loaded, including the first
+     */
+    public long getReloads() {
+        return reloads.sum();
+    }
+
+    /**
+     * @return Number of reloads that failed, each change of the files is counted once
+     */
+    public long getFailedReloads() {
+        return failedReloads.sum();
+    }
+
+
+    private Classifier load() throws IOException {
+        final CompiledOptions options = ClassifierOptions.compileOptions(optionsFile);
+        final Map<String, Set<String>> dictionary = CanonicalForm.readDictionary(dictionaryFile);
+        final PriorPolarityLexicon lexicon = PriorPolarityLexicon.load(lexiconFile);
+        final Classifier full = new Classifier(lexicon, new TweetNormalizer(dictionary), options);
+        final Classifier next = cacheCapacity > 0 ? full.withCache(new ResultCache(cacheCapacity, cacheKey)) : full;
+        next.getDegraded();
+        return next;
+    }
+
+    private long[] getFileStamps() {
+        return new long[]{lexiconFile.lastModified(), lexiconFile.length(), optionsFile.lastModified(),
+                optionsFile.length(), dictionaryFile.lastModified(), dictionaryFile.length()};
+    }
+}
@@ -0,0 +1,152 @@
+package com.freva.masteroppgave.classifier;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of sentiment values, keyed by a 64-bit fingerprint of either the raw or the filtered tweet. The cache
+ * is direct mapped: every fingerprint has exactly one slot, and storing a value evicts whatever other tweet occupied
+ * the slot, so the size never exceeds the capacity and neither look ups nor stores take any locks. Two different
+ * tweets with the same fingerprint would share a value, which with 64-bit fingerprints is negligible for any realistic
+ * number of distinct tweets.
+ *
+ * The values are only valid for the lexicon, options and filters they were calculated with, see
+ * {@link Classifier#withCache(ResultCache)}.
+ */
+public class ResultCache {
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+    private final Key key;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity Maximum number of cached values, rounded up to a power of two
+     * @param key      What the fingerprints are calculated from
+     */
+    public ResultCache(int capacity, Key key) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+
+        int size = 1;
+        while (size < capacity) size <<= 1;
+        this.entries = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.key = key;
+    }
+
+    public Key getKey() {
+        return key;
+    }
+
+
+    /**
+     * @param fingerprint Fingerprint of tweet, see {@link #fingerprint(CharSequence)}
+     * @return Cached value of tweet, or NaN if it is not in the cache
+     */
+    public double get(long fingerprint) {
+        final Entry entry = entries.get(slot(fingerprint));
+        if (entry != null && entry.fingerprint == fingerprint) {
+            hits.increment();
+            return entry.value;
+        }
+
+        misses.increment();
+        return Double.NaN;
+    }
+
+    /**
+     * Stores value for tweet with the given fingerprint. NaN values are not stored, as they can not be told apart
+     * from a miss.
+     *
+     * @param fingerprint Fingerprint of tweet, see {@link #fingerprint(CharSequence)}
+     * @param value       Sentiment value of tweet
+     */
+    public void put(long fingerprint, double value) {
+        if (Double.isNaN(value)) return;
+
+        final int slot = slot(fingerprint);
+        final Entry previous = entries.getAndSet(slot, new Entry(fingerprint, value));
+        if (previous != null && previous.fingerprint != fingerprint) {
+            evictions.increment();
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, null);
+        }
+    }
+
+
+    public int getCapacity() {
+        return entries.length();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public String toString() {
+        return "ResultCache{capacity=" + getCapacity() + ", hits=" + getHits() + ", misses=" + getMisses() +
+                ", evictions=" + getEvictions() + "}";
+    }
+
+
+    /**
+     * Calculates 64-bit fingerprint of text, FNV-1a followed by the finalizer of MurmurHash3.
+     *
+     * @param text Text to fingerprint
+     * @return Fingerprint of text
+     */
+    public static long fingerprint(CharSequence text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private int slot(long fingerprint) {
+        return (int) fingerprint & mask;
+    }
+
+
+    public enum Key {
+        /**
+         * Fingerprint the tweet as given, a hit skips both filtering and scoring
+         */
+        RAW_TWEET,
+        /**
+         * Fingerprint the filtered tweet, a hit only skips scoring, but tweets that only differ in what the filters
+         * remove (URLs, usernames, case...) share the value
+         */
+        FILTERED_TWEET
+    }
+
+    private static class Entry {
+        private final long fingerprint;
+        private final double value;
+
+        private Entry(long fingerprint, double value) {
+            this.fingerprint = fingerprint;
+            this.value = value;
+        }
+    }
+}
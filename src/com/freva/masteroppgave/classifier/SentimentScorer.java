@@ -0,0 +1,211 @@
+package com.freva.masteroppgave.classifier;
+
+import com.freva.masteroppgave.classifier.ClassifierOptions.Variable;
+import com.freva.masteroppgave.lexicon.container.PriorPolarityLexicon;
+import com.freva.masteroppgave.lexicon.container.TokenTrie;
+import com.freva.masteroppgave.lexicon.container.Vocabulary;
+import com.freva.masteroppgave.preprocessing.filters.TokenBuffer;
+
+import java.util.Arrays;
+
+public class SentimentScorer {
+    private static final ThreadLocal<ScratchBuffer> scratchBuffers = ThreadLocal.withInitial(ScratchBuffer::new);
+
+    private final Vocabulary vocabulary;
+    private final TokenRoles roles;
+    private final TokenTrie phraseTree;
+    private final CompiledOptions options;
+
+    /**
+     * @param lexicon    Lexicon to take polarities from
+     * @param phraseTree Phrase tree of the lexicon, which must use the lexicon's {@link Vocabulary}
+     * @param options    Options to score with
+     */
+    public SentimentScorer(PriorPolarityLexicon lexicon, TokenTrie phraseTree, CompiledOptions options) {
+        if (phraseTree.getVocabulary() != lexicon.getVocabulary()) {
+            throw new IllegalArgumentException("Phrase tree does not use the vocabulary of the lexicon");
+        }
+
+        this.vocabulary = lexicon.getVocabulary();
+        this.roles = new TokenRoles(lexicon, options);
+        this.phraseTree = phraseTree;
+        this.options = options;
+    }
+
+    /**
+     * Calculates sentiment value of an already filtered tweet. The tweet is parsed into ids of its phrases in the
+     * lexicon's {@link Vocabulary} in the calling thread's scratch buffer, then negation scope and intensifiers are applied in a single
+     * forward pass over the tokens, so no LexicalToken instances or intermediate lists are allocated.
+     *
+     * @param tweet Filtered tweet to calculate sentiment value for
+     * @return Sum of sentiment values of all the phrases in tweet
+     */
+    public double calculateSentiment(String tweet) {
+        return calculateSentiment(scratchBuffers.get().tokenizedTweet.tokenize(tweet, vocabulary));
+    }
+
+    /**
+     * Same as {@link #calculateSentiment(String)}, for a tweet already split into sentences and words by the filters.
+     */
+    public double calculateSentiment(TokenBuffer tweet) {
+        return calculateSentiment(scratchBuffers.get().tokenizedTweet.tokenize(tweet, vocabulary));
+    }
+
+    /**
+     * Calculates sentiment value of an already tokenized tweet, which may be shared with scorers of the same lexicon.
+     *
+     * @param tweet Tweet tokenized with {@link #getVocabulary()} to calculate sentiment value for
+     * @return Sum of sentiment values of all the phrases in tweet
+     */
+    public double calculateSentiment(TokenizedTweet tweet) {
+        if (tweet.getVocabulary() != vocabulary) {
+            throw new IllegalArgumentException("Tweet was tokenized with the vocabulary of another lexicon");
+        }
+
+        ScratchBuffer buffer = scratchBuffers.get();
+        buffer.clear();
+
+        for (int sentence = 0; sentence < tweet.getNumSentences(); sentence++) {
+            parseSentence(tweet, sentence, buffer);
+        }
+        scoreTokens(buffer);
+        return buffer.sumSentimentValues(options.getVariable(Variable.NEGATION_VALUE));
+    }
+
+
+    /**
+     * @return Vocabulary of the lexicon, which tweets passed to {@link #calculateSentiment(TokenizedTweet)} must be
+     * tokenized with
+     */
+    public Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+
+    /**
+     * Adds the optimal tokenization of a sentence to the buffer, the same way
+     * {@link com.freva.masteroppgave.classifier.sentence.LexicalParser} does.
+     */
+    private void parseSentence(TokenizedTweet tweet, int sentence, ScratchBuffer buffer) {
+        final int[] tokenIds = tweet.getTokenIds();
+        final int from = tweet.getSentenceStart(sentence), to = tweet.getSentenceEnd(sentence);
+        final char punctuation = tweet.getPunctuation(sentence);
+
+        double intensification = 1;
+        if (punctuation == '!') {
+            intensification = options.getVariable(Variable.EXCLAMATION_INTENSIFIER);
+        } else if (punctuation == '?') {
+            intensification = options.getVariable(Variable.QUESTION_INTENSIFIER);
+        }
+
+        final TokenTrie.Allocation allocation = buffer.allocation;
+        phraseTree.findOptimalAllocation(tokenIds, from, to, allocation);
+
+        int setIndex = from;
+        for (int i = 0; i < allocation.size(); i++) {
+            while (setIndex < allocation.getStartIndex(i)) {
+                buffer.add(tokenIds[setIndex++], intensification, false);
+            }
+            buffer.add(allocation.getPhraseId(i), intensification, allocation.getEndIndex(i) == to - 1);
+            setIndex = allocation.getEndIndex(i) + 1;
+        }
+
+        for (; setIndex < to; setIndex++) {
+            buffer.add(tokenIds[setIndex], intensification, setIndex == to - 1);
+        }
+    }
+
+
+    /**
+     * Looks up lexical value of every token in buffer with a single {@link TokenRoles} look up per token. Negators mark the following tokens (up to negation scope length
+     * or end of sentence) as negated and intensifiers intensify the following token, both of which are always ahead
+     * of the current position, so one pass is sufficient.
+     */
+    private void scoreTokens(ScratchBuffer buffer) {
+        final int negationScopeLength = (int) options.getVariable(Variable.NEGATION_SCOPE_LENGTH);
+
+        int negationScope = 0;
+        for (int i = 0; i < buffer.size; i++) {
+            final int phraseId = buffer.phraseIds[i];
+
+            if (negationScope > 0) {
+                buffer.negated[i] = true;
+                negationScope = buffer.endOfSentence[i] ? 0 : negationScope - 1;
+            }
+
+            final int role = roles.getRoles(phraseId);
+            if ((role & TokenRoles.POLARITY) != 0) {
+                buffer.lexicalValues[i] = roles.getPolarity(phraseId);
+
+            } else if ((role & TokenRoles.NEGATOR) != 0) {
+                negationScope = negationScopeLength;
+
+            } else if ((role & TokenRoles.INTENSIFIER) != 0) {
+                if (!buffer.endOfSentence[i]) {
+                    buffer.intensifications[i + 1] *= roles.getIntensifierValue(phraseId);
+                }
+            }
+        }
+    }
+
+
+    private static class ScratchBuffer {
+        private final TokenizedTweet tokenizedTweet = new TokenizedTweet();
+        private final TokenTrie.Allocation allocation = new TokenTrie.Allocation();
+        private int[] phraseIds = new int[64];
+        private double[] lexicalValues = new double[64];
+        private double[] intensifications = new double[64];
+        private boolean[] negated = new boolean[64];
+        private boolean[] endOfSentence = new boolean[64];
+        private int size;
+
+        private void clear() {
+            size = 0;
+        }
+
+        private void add(int phraseId, double intensification, boolean atEndOfSentence) {
+            if (size == phraseIds.length) {
+                final int capacity = 2 * size;
+                phraseIds = Arrays.copyOf(phraseIds, capacity);
+                lexicalValues = Arrays.copyOf(lexicalValues, capacity);
+                intensifications = Arrays.copyOf(intensifications, capacity);
+                negated = Arrays.copyOf(negated, capacity);
+                endOfSentence = Arrays.copyOf(endOfSentence, capacity);
+            }
+
+            phraseIds[size] = phraseId;
+            lexicalValues[size] = 0;
+            intensifications[size] = intensification;
+            negated[size] = false;
+            endOfSentence[size] = atEndOfSentence;
+            size++;
+        }
+
+        /**
+         * Sums sentiment values of the tokens using the same compensated summation as {@link
+         * java.util.stream.DoubleStream#sum()}, so the result is bit for bit equal to summing LexicalTokens.
+         */
+        private double sumSentimentValues(double negationValue) {
+            double sum = 0, compensation = 0, simpleSum = 0;
+            for (int i = 0; i < size; i++) {
+                double sentimentValue = lexicalValues[i];
+                if (intensifications[i] != 1) {
+                    sentimentValue *= intensifications[i];
+                }
+
+                if (negated[i] && sentimentValue != 0) {
+                    sentimentValue = (sentimentValue > 0) ? sentimentValue - negationValue : sentimentValue + negationValue;
+                }
+
+                final double corrected = sentimentValue - compensation;
+                final double newSum = sum + corrected;
+                compensation = (newSum - sum) - corrected;
+                sum = newSum;
+                simpleSum += sentimentValue;
+            }
+
+            final double result = sum - compensation;
+            return Double.isNaN(result) && Double.isInfinite(simpleSum) ? simpleSum : result;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.freva.masteroppgave.classifier;
+
+import com.freva.masteroppgave.lexicon.container.PriorPolarityLexicon;
+import com.freva.masteroppgave.preprocessing.filters.CanonicalForm;
+import com.freva.masteroppgave.preprocessing.filters.RegexFilters;
+import com.freva.masteroppgave.preprocessing.filters.TweetNormalizer;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cheap check on the raw tweet that proves that a tweet filtered with {@link TweetNormalizer} can not contain any
+ * phrase from the lexicon, in which case its sentiment value is always 0 and the filtering and scoring can be skipped.
+ *
+ * For every lexicon phrase one of its words is picked as trigger. Once the tweet is filtered, every ordinary word is
+ * a run of letters that also appears in the raw tweet, as long as the raw tweet is ASCII and contains neither '&amp;',
+ * '@' nor "RT" (HTML unescaping, usernames, e-mails and RT tags are the only filters that can join letters from both
+ * sides of the text they remove, the rest only remove inner word characters or split words). The prefilter therefore
+ * runs an Aho-Corasick automaton over the lower cased letters of the raw tweet, with repeating characters removed
+ * the same way {@link CanonicalForm} does, and reports the tweet as possibly subjective if any trigger, or canonical
+ * form that {@link CanonicalForm} would correct into a trigger, is found. If the lexicon contains phrases made up of
+ * only special class tokens (emoticons, hashtags...), tweets containing characters that may start one are never
+ * skipped either. Words with other characters can only be introduced by {@link CanonicalForm}, and are only looked
+ * for in its dictionary.
+ *
+ * The dictionary must be the one the tweets are filtered with. A prefilter built for the dictionary loaded in
+ * {@link CanonicalForm} stops skipping tweets once another dictionary is loaded.
+ */
+public class SubjectivityPrefilter {
+    private static final int ALPHABET_SIZE = 26;
+
+    private final int[] transitions;
+    private final boolean[] accepting;
+    private final boolean specialClassTriggers;
+    private final boolean disabled;
+    private final boolean followsLoadedDictionary;
+    private final int dictionaryVersion;
+
+    private final LongAdder checked = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * Creates prefilter for tweets filtered with the dictionary loaded in {@link CanonicalForm}.
+     */
+    public SubjectivityPrefilter(PriorPolarityLexicon lexicon) {
+        this(lexicon, null);
+    }
+
+    /**
+     * @param lexicon    Lexicon to find the subjective phrases of
+     * @param dictionary Dictionary the tweets are corrected with, see {@link TweetNormalizer#getDictionary()}, or null
+     *                   if they are corrected with the dictionary loaded in {@link CanonicalForm}
+     */
+    public SubjectivityPrefilter(PriorPolarityLexicon lexicon, Map<String, Set<String>> dictionary) {
+        this.followsLoadedDictionary = dictionary == null;
+        this.dictionaryVersion = CanonicalForm.getDictionaryVersion();
+        if (dictionary == null) {
+            dictionary = CanonicalForm.getDictionary();
+        }
+
+        Set<String> wordTriggers = new HashSet<>();
+        Set<String> otherTriggers = new HashSet<>();
+        boolean specialClassTriggers = false;
+        boolean disabled = false;
+        for (String phrase : lexicon.getSubjectiveWords()) {
+            String trigger = null, specialClassWord = null, otherWord = null;
+            boolean hasEmptyWord = false;
+            for (String word : RegexFilters.WHITESPACE.split(phrase)) {
+                if (isWord(word, 0, word.length())) {
+                    if (trigger == null || word.length() > trigger.length()) trigger = word;
+                } else if (word.startsWith("||") && word.endsWith("||")) {
+                    specialClassWord = word;
+                } else if (word.isEmpty()) {
+                    hasEmptyWord = true;
+                } else {
+                    otherWord = word;
+                }
+            }
+
+            if (trigger != null) {
+                wordTriggers.add(removeRepeatingCharacters(trigger));
+            } else if (specialClassWord != null) {
+                specialClassTriggers = true;
+                otherTriggers.add(specialClassWord);
+            } else if (hasEmptyWord) {
+                disabled = true;
+            } else {
+                otherTriggers.add(otherWord);
+            }
+        }
+
+        Automaton triggers = new Automaton(wordTriggers);
+        for (Map.Entry<String, Set<String>> entry : dictionary.entrySet()) {
+            final String canonical = entry.getKey();
+            if (!isReachableCanonicalForm(canonical)) continue;
+
+            boolean correctsIntoTrigger = triggers.containsWord(canonical, otherTriggers);
+            for (Iterator<String> it = entry.getValue().iterator(); it.hasNext() && !correctsIntoTrigger; ) {
+                correctsIntoTrigger = triggers.containsWord(it.next(), otherTriggers);
+            }
+            if (!correctsIntoTrigger) continue;
+
+            final String longestWord = getLongestWord(canonical);
+            if (longestWord == null) {
+                disabled = true;
+            } else {
+                wordTriggers.add(longestWord);
+            }
+        }
+
+        Automaton automaton = new Automaton(wordTriggers);
+        this.transitions = automaton.transitions;
+        this.accepting = automaton.accepting;
+        this.specialClassTriggers = specialClassTriggers;
+        this.disabled = disabled;
+    }
+
+
+    /**
+     * @param tweet Raw, unfiltered, tweet
+     * @return False if the tweet certainly has sentiment value 0, true if it may contain subjective phrases
+     */
+    public boolean mightBeSubjective(String tweet) {
+        checked.increment();
+        if (disabled || (followsLoadedDictionary && dictionaryVersion != CanonicalForm.getDictionaryVersion())) {
+            return true;
+        }
+
+        int state = 0;
+        char previous = 0;
+        for (int i = 0; i < tweet.length(); i++) {
+            char c = tweet.charAt(i);
+            if (c >= 0x80 || c == '&' || c == '@' || (c == 'R' && i + 1 < tweet.length() && tweet.charAt(i + 1) == 'T')) {
+                return true;
+            }
+            if (specialClassTriggers && mayStartSpecialClassToken(tweet, i)) {
+                return true;
+            }
+
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+            if (c < 'a' || c > 'z' || c == previous) continue;
+
+            previous = c;
+            state = transitions[state * ALPHABET_SIZE + c - 'a'];
+            if (accepting[state]) return true;
+        }
+
+        skipped.increment();
+        return false;
+    }
+
+    /**
+     * @return Number of tweets checked by this prefilter
+     */
+    public long getCheckedCount() {
+        return checked.sum();
+    }
+
+    /**
+     * @return Number of tweets this prefilter has found to certainly have sentiment value 0
+     */
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+
+    private static boolean mayStartSpecialClassToken(String tweet, int index) {
+        switch (tweet.charAt(index)) {
+            case '|': case '#': case ':': case ';': case '=': case '8': case '<': case '^':
+                return true;
+            case 'x': case 'X':
+                return isDAt(tweet, index + 1) || isDAt(tweet, index + 2);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isDAt(String tweet, int index) {
+        return index < tweet.length() && (tweet.charAt(index) == 'd' || tweet.charAt(index) == 'D');
+    }
+
+    /**
+     * Filtered tokens consist only of lower case letters, whitespace and sentence punctuation, so only such canonical
+     * forms are ever looked up in the dictionary.
+     */
+    private static boolean isReachableCanonicalForm(String canonical) {
+        for (int i = 0; i < canonical.length(); i++) {
+            final char c = canonical.charAt(i);
+            if (!isLetter(c) && c != ' ' && c != '?' && c != '!' && c != '.' && c != ',') return false;
+        }
+        return true;
+    }
+
+    private static String getLongestWord(String text) {
+        String longest = null;
+        int start = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || !isLetter(text.charAt(i))) {
+                if (i > start && (longest == null || i - start > longest.length())) {
+                    longest = text.substring(start, i);
+                }
+                start = i + 1;
+            }
+        }
+        return longest;
+    }
+
+    private static boolean isWord(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isLetter(text.charAt(i))) return false;
+        }
+        return end > start;
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+    private static String removeRepeatingCharacters(String text) {
+        final StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            if (i == 0 || text.charAt(i) != text.charAt(i - 1)) {
+                sb.append(text.charAt(i));
+            }
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Aho-Corasick automaton over lower case letters, stored as a complete transition table.
+     */
+    private static class Automaton {
+        private final int[] transitions;
+        private final boolean[] accepting;
+
+        private Automaton(Collection<String> patterns) {
+            int numStates = 1;
+            for (String pattern : patterns) numStates += pattern.length();
+
+            int[] transitions = new int[numStates * ALPHABET_SIZE];
+            boolean[] accepting = new boolean[numStates];
+            Arrays.fill(transitions, -1);
+
+            int size = 1;
+            for (String pattern : patterns) {
+                int state = 0;
+                for (int i = 0; i < pattern.length(); i++) {
+                    final int edge = state * ALPHABET_SIZE + pattern.charAt(i) - 'a';
+                    if (transitions[edge] == -1) {
+                        transitions[edge] = size++;
+                    }
+                    state = transitions[edge];
+                }
+                accepting[state] = true;
+            }
+
+            int[] failure = new int[size];
+            int[] queue = new int[size];
+            int head = 0, tail = 0;
+            for (int c = 0; c < ALPHABET_SIZE; c++) {
+                if (transitions[c] == -1) {
+                    transitions[c] = 0;
+                } else {
+                    queue[tail++] = transitions[c];
+                }
+            }
+
+            while (head < tail) {
+                final int state = queue[head++];
+                accepting[state] |= accepting[failure[state]];
+                for (int c = 0; c < ALPHABET_SIZE; c++) {
+                    final int edge = state * ALPHABET_SIZE + c;
+                    final int fallback = transitions[failure[state] * ALPHABET_SIZE + c];
+                    if (transitions[edge] == -1) {
+                        transitions[edge] = fallback;
+                    } else {
+                        failure[transitions[edge]] = fallback;
+                        queue[tail++] = transitions[edge];
+                    }
+                }
+            }
+
+            this.transitions = Arrays.copyOf(transitions, size * ALPHABET_SIZE);
+            this.accepting = Arrays.copyOf(accepting, size);
+        }
+
+        /**
+         * Checks whether text may contain one of the patterns as a word, over-approximated by looking for the patterns
+         * in every run of letters with repeating characters removed, or one of the otherWords as a substring.
+         */
+        private boolean containsWord(String text, Collection<String> otherWords) {
+            int state = 0;
+            char previous = 0;
+            for (int i = 0; i < text.length(); i++) {
+                final char c = text.charAt(i);
+                if (!isLetter(c)) {
+                    state = 0;
+                    previous = 0;
+                } else if (c != previous) {
+                    previous = c;
+                    state = transitions[state * ALPHABET_SIZE + c - 'a'];
+                    if (accepting[state]) return true;
+                }
+            }
+
+            for (String otherWord : otherWords) {
+                if (text.contains(otherWord)) return true;
+            }
+            return false;
+        }
+    }
+}
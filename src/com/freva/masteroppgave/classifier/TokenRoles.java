@@ -0,0 +1,145 @@
+package com.freva.masteroppgave.classifier;
+
+import com.freva.masteroppgave.lexicon.container.PriorPolarityLexicon;
+import com.freva.masteroppgave.lexicon.container.Vocabulary;
+
+import java.util.Arrays;
+
+/**
+ * Table of the roles the tokens of a lexicon's {@link Vocabulary} have in the lexicon and a set of options, so that a
+ * token's polarity, negator flag, intensifier value and stop word flag are all found by its id instead of one hash look
+ * up per collection. Polarities are read from the lexicon's own id table, which all option variants of the lexicon
+ * share. The option words are stored in a small open addressing table keyed by id, so building the roles for another
+ * set of options (f.ex. by {@link Classifier#withOptions(CompiledOptions)}) only costs the number of option words.
+ */
+public class TokenRoles {
+    public static final int POLARITY = 1;
+    public static final int NEGATOR = 2;
+    public static final int INTENSIFIER = 4;
+    public static final int STOP_WORD = 8;
+
+    private final PriorPolarityLexicon lexicon;
+    private final Vocabulary vocabulary;
+    private final int[] wordIds;
+    private final byte[] wordRoles;
+    private final double[] intensifierValues;
+    private final int mask;
+
+    /**
+     * The words of options are registered in the lexicon's vocabulary, so they get ids even if they are not part of
+     * the lexicon.
+     *
+     * @param lexicon Lexicon to take polarities from, or null to only include the roles in options
+     * @param options Options to take negators, intensifiers and stop words from
+     */
+    public TokenRoles(PriorPolarityLexicon lexicon, CompiledOptions options) {
+        this.lexicon = lexicon;
+        this.vocabulary = lexicon != null ? lexicon.getVocabulary() : new Vocabulary();
+
+        final int numWords = options.getNegators().size() + options.getIntensifiers().size() +
+                options.getStopWords().size();
+        final int capacity = Integer.highestOneBit(2 * Math.max(1, numWords) - 1) << 1;
+        this.wordIds = new int[capacity];
+        this.wordRoles = new byte[capacity];
+        this.intensifierValues = new double[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(wordIds, Vocabulary.UNKNOWN);
+
+        for (String word : options.getNegators()) {
+            wordRoles[insert(vocabulary.register(word))] |= NEGATOR;
+        }
+        for (String word : options.getIntensifiers()) {
+            final int slot = insert(vocabulary.register(word));
+            wordRoles[slot] |= INTENSIFIER;
+            intensifierValues[slot] = options.getIntensifierValue(word);
+        }
+        for (String word : options.getStopWords()) {
+            wordRoles[insert(vocabulary.register(word))] |= STOP_WORD;
+        }
+    }
+
+    /**
+     * @return Vocabulary the token ids are from, the one of the lexicon if any
+     */
+    public Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+
+    /**
+     * @param id Id of token in {@link #getVocabulary()}
+     * @return Bitwise or of the roles of the token ({@link #POLARITY}, {@link #NEGATOR}, {@link #INTENSIFIER} and
+     * {@link #STOP_WORD}), 0 if the token has none
+     */
+    public int getRoles(int id) {
+        if (id < 0) return 0;
+
+        final int role = lexicon != null && lexicon.hasToken(id) ? POLARITY : 0;
+        final int slot = find(id);
+        return slot < 0 ? role : role | wordRoles[slot];
+    }
+
+    public int getRoles(String word) {
+        return getRoles(vocabulary.getId(word));
+    }
+
+    /**
+     * @param id Id of token in {@link #getVocabulary()}
+     * @return Polarity of the token, only defined if it has the {@link #POLARITY} role
+     */
+    public double getPolarity(int id) {
+        return lexicon.getTokenPolarity(id);
+    }
+
+    /**
+     * @param id Id of token in {@link #getVocabulary()}
+     * @return Intensifier value of the token, only defined if it has the {@link #INTENSIFIER} role
+     */
+    public double getIntensifierValue(int id) {
+        final int slot = find(id);
+        return slot < 0 ? 0 : intensifierValues[slot];
+    }
+
+
+    /**
+     * Checks the rule both the n-gram finder and the lexicon creator use to reject n-grams: an n-gram may not contain
+     * intensifiers or end with a stop word.
+     *
+     * @param nGram Words of the n-gram
+     * @return True if any word is an intensifier or the last word is a stop word
+     */
+    public boolean containsIllegalWord(String[] nGram) {
+        for (int i = 0; i < nGram.length; i++) {
+            final int role = getRoles(nGram[i]);
+            if ((role & INTENSIFIER) != 0 || (i == nGram.length - 1 && (role & STOP_WORD) != 0)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return Slot of id in the table of option words, or -1 if it is not an option word
+     */
+    private int find(int id) {
+        for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+            if (wordIds[slot] == id) return slot;
+            if (wordIds[slot] == Vocabulary.UNKNOWN) return -1;
+        }
+    }
+
+    private int insert(int id) {
+        int slot = hash(id) & mask;
+        while (wordIds[slot] != id && wordIds[slot] != Vocabulary.UNKNOWN) {
+            slot = (slot + 1) & mask;
+        }
+        wordIds[slot] = id;
+        return slot;
+    }
+
+    private static int hash(int id) {
+        final int mixed = id * 0x9E3779B9;
+        return mixed ^ (mixed >>> 16);
+    }
+}
@@ -0,0 +1,113 @@
+package com.freva.masteroppgave.classifier;
+
+import com.freva.masteroppgave.lexicon.container.Vocabulary;
+import com.freva.masteroppgave.preprocessing.filters.TokenBuffer;
+
+/**
+ * Reusable buffer holding a filtered tweet split into sentences of token ids of a lexicon's {@link Vocabulary}. A tweet
+ * tokenized once can be scored by any number of {@link SentimentScorer}s using the same lexicon. Not thread safe.
+ */
+public class TokenizedTweet {
+    private final TokenBuffer tokenBuffer = new TokenBuffer();
+    private Vocabulary vocabulary;
+    private int[] tokenIds = new int[64];
+    private int[] sentenceEnds = new int[8];
+    private char[] punctuation = new char[8];
+    private int numTokens;
+    private int numSentences;
+
+    /**
+     * Splits tweet into sentences and tokens the same way {@link TokenBuffer} does, replacing the previous content of
+     * this buffer.
+     *
+     * @param tweet      Filtered tweet
+     * @param vocabulary Vocabulary to look up the ids of the words in
+     * @return This buffer
+     */
+    public TokenizedTweet tokenize(String tweet, Vocabulary vocabulary) {
+        return tokenize(tokenBuffer.set(tweet), vocabulary);
+    }
+
+    /**
+     * Replaces the previous content of this buffer by the ids of the words in tokens.
+     *
+     * @param tokens     Filtered tweet split into sentences and words
+     * @param vocabulary Vocabulary to look up the ids of the words in
+     * @return This buffer
+     */
+    public TokenizedTweet tokenize(TokenBuffer tokens, Vocabulary vocabulary) {
+        final int numWords = tokens.getNumWords();
+        if (tokenIds.length < numWords) {
+            tokenIds = new int[Math.max(2 * tokenIds.length, numWords)];
+        }
+        if (sentenceEnds.length < tokens.getNumSentences()) {
+            sentenceEnds = new int[Math.max(2 * sentenceEnds.length, tokens.getNumSentences())];
+            punctuation = new char[sentenceEnds.length];
+        }
+
+        final String[] words = tokens.getWords();
+        for (int i = 0; i < numWords; i++) {
+            tokenIds[i] = vocabulary.getId(words[i]);
+        }
+        for (int i = 0; i < tokens.getNumSentences(); i++) {
+            sentenceEnds[i] = tokens.getSentenceEnd(i);
+            punctuation[i] = tokens.getPunctuation(i);
+        }
+
+        this.vocabulary = vocabulary;
+        numTokens = numWords;
+        numSentences = tokens.getNumSentences();
+        return this;
+    }
+
+
+    /**
+     * @return Vocabulary the token ids are from
+     */
+    public Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * @return Token ids of all the sentences, only the first {@link #getNumTokens()} are valid
+     */
+    public int[] getTokenIds() {
+        return tokenIds;
+    }
+
+    public int getNumTokens() {
+        return numTokens;
+    }
+
+    /**
+     * @return Number of non empty sentences
+     */
+    public int getNumSentences() {
+        return numSentences;
+    }
+
+    /**
+     * @param sentence Index of sentence
+     * @return Index of the first token of the sentence in {@link #getTokenIds()}
+     */
+    public int getSentenceStart(int sentence) {
+        return sentence == 0 ? 0 : sentenceEnds[sentence - 1];
+    }
+
+    /**
+     * @param sentence Index of sentence
+     * @return Index after the last token of the sentence in {@link #getTokenIds()}
+     */
+    public int getSentenceEnd(int sentence) {
+        return sentenceEnds[sentence];
+    }
+
+    /**
+     * @param sentence Index of sentence
+     * @return Punctuation character that ended the sentence, or {@link TokenBuffer#NO_PUNCTUATION} for the last
+     * sentence of the tweet
+     */
+    public char getPunctuation(int sentence) {
+        return punctuation[sentence];
+    }
+}
@@ -1,15 +1,18 @@
 package com.freva.masteroppgave.classifier.sentence;
 
-import com.freva.masteroppgave.classifier.ClassifierOptions;
+import com.freva.masteroppgave.classifier.ClassifierOptions.Variable;
+import com.freva.masteroppgave.classifier.CompiledOptions;
 import com.freva.masteroppgave.lexicon.container.TokenTrie;
-import com.freva.masteroppgave.preprocessing.filters.RegexFilters;
+import com.freva.masteroppgave.lexicon.container.Vocabulary;
+import com.freva.masteroppgave.preprocessing.filters.TokenBuffer;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.stream.Collectors;
 
 public class LexicalParser {
+    private static final ThreadLocal<TokenBuffer> tokenBuffers = ThreadLocal.withInitial(TokenBuffer::new);
+    private static final ThreadLocal<TokenTrie.Allocation> allocations = ThreadLocal.withInitial(TokenTrie.Allocation::new);
+
     /**
      * Returns list of LexicalTokens found in tweet. The list contains all the words in original tweet, but are
      * optimally grouped up to form largest matching n-grams from lexicon. If no match is found, token is added as
@@ -17,49 +20,66 @@ public class LexicalParser {
      *
      * @param tweet      Tweet to lexically parse
      * @param phraseTree Token tree that contains all the lexical n-grams
+     * @param options    Options to read punctuation intensifiers and negation value from
      * @return List of LexicalTokens
      */
-    public static List<LexicalToken> lexicallyParseTweet(String tweet, TokenTrie phraseTree) {
+    public static List<LexicalToken> lexicallyParseTweet(String tweet, TokenTrie phraseTree, CompiledOptions options) {
+        return lexicallyParseTweet(tokenBuffers.get().set(tweet), phraseTree, options);
+    }
+
+    /**
+     * Same as {@link #lexicallyParseTweet(String, TokenTrie, CompiledOptions)}, for a tweet already split into
+     * sentences and words by {@link com.freva.masteroppgave.preprocessing.filters.Filters#apply(String, TokenBuffer)}.
+     * Sentences are handled as index ranges of the tweet's words, and the tokens of every sentence are appended
+     * directly to the result, where punctuation intensification is applied to the range they occupy.
+     */
+    public static List<LexicalToken> lexicallyParseTweet(TokenBuffer tweet, TokenTrie phraseTree, CompiledOptions options) {
+        final Vocabulary vocabulary = phraseTree.getVocabulary();
+        final String[] words = tweet.getWords();
+        final int[] tokenIds = new int[tweet.getNumWords()];
+        for (int i = 0; i < tokenIds.length; i++) {
+            tokenIds[i] = vocabulary.getId(words[i]);
+        }
+
         List<LexicalToken> lexicalTokens = new ArrayList<>();
+        final TokenTrie.Allocation allocation = allocations.get();
+        for (int sentence = 0; sentence < tweet.getNumSentences(); sentence++) {
+            final int sentenceStart = lexicalTokens.size();
+            final int from = tweet.getSentenceStart(sentence), to = tweet.getSentenceEnd(sentence);
+            phraseTree.findOptimalAllocation(tokenIds, from, to, allocation);
 
-        int prev = 0;
-        Matcher matcher = RegexFilters.SENTENCE_END_PUNCTUATION.matcher(tweet);
-        while (matcher.find()) {
-            String sentence = tweet.substring(prev, matcher.start());
-            String punctuation = matcher.group();
-            prev = matcher.end();
+            int setIndex = from;
+            for (int i = 0; i < allocation.size(); i++) {
+                while (setIndex < allocation.getStartIndex(i)) {
+                    lexicalTokens.add(new LexicalToken(words[setIndex++], options));
+                }
+                lexicalTokens.add(new LexicalToken(vocabulary.getWord(allocation.getPhraseId(i)), options));
+                setIndex = allocation.getEndIndex(i) + 1;
+            }
+            while (setIndex < to) {
+                lexicalTokens.add(new LexicalToken(words[setIndex++], options));
+            }
 
-            lexicalTokens.addAll(parseSentence(sentence, punctuation, phraseTree));
+            lexicalTokens.get(lexicalTokens.size() - 1).setAtEndOfSentence(true);
+            intensifySentence(lexicalTokens, sentenceStart, tweet.getPunctuation(sentence), options);
         }
 
-        lexicalTokens.addAll(parseSentence(tweet.substring(prev), null, phraseTree));
-
         return lexicalTokens;
     }
 
-    private static List<LexicalToken> parseSentence(String sentence, String punctuation, TokenTrie phraseTree) {
-        String[] sentenceTokens = RegexFilters.WHITESPACE.split(sentence);
-
-        List<String> tokenizedSentence = phraseTree.findOptimalTokenization(sentenceTokens);
-        List<LexicalToken> tokens = tokenizedSentence.stream().map(LexicalToken::new).collect(Collectors.toList());
-
-        if (tokens.size() > 0) {
-            tokens.get(tokens.size() - 1).setAtEndOfSentence(true);
-
-            if (punctuation != null && punctuation.contains("!")) {
-                final double exclamationIntensifier = ClassifierOptions.getVariable(ClassifierOptions.Variable.EXCLAMATION_INTENSIFIER);
-                for (LexicalToken token : tokens) {
-                    token.intensifyToken(exclamationIntensifier);
-                }
-
-            } else if (punctuation != null && punctuation.contains("?")) {
-                final double questionIntensifier = ClassifierOptions.getVariable(ClassifierOptions.Variable.QUESTION_INTENSIFIER);
-                for (LexicalToken token : tokens) {
-                    token.intensifyToken(questionIntensifier);
-                }
-            }
+    private static void intensifySentence(List<LexicalToken> tokens, int sentenceStart, char punctuation,
+                                          CompiledOptions options) {
+        final double intensification;
+        if (punctuation == '!') {
+            intensification = options.getVariable(Variable.EXCLAMATION_INTENSIFIER);
+        } else if (punctuation == '?') {
+            intensification = options.getVariable(Variable.QUESTION_INTENSIFIER);
+        } else {
+            return;
         }
 
-        return tokens;
+        for (int i = sentenceStart; i < tokens.size(); i++) {
+            tokens.get(i).intensifyToken(intensification);
+        }
     }
 }
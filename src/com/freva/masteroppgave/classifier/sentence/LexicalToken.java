@@ -1,17 +1,20 @@
 package com.freva.masteroppgave.classifier.sentence;
 
-import com.freva.masteroppgave.classifier.ClassifierOptions;
+import com.freva.masteroppgave.classifier.ClassifierOptions.Variable;
+import com.freva.masteroppgave.classifier.CompiledOptions;
 
 public class LexicalToken {
     private final String phrase;
+    private final CompiledOptions options;
     private double lexicalValue;
     private double intensification = 1;
 
     private boolean inNegatedContext;
     private boolean atEndOfSentence;
 
-    public LexicalToken(String phrase) {
+    public LexicalToken(String phrase, CompiledOptions options) {
         this.phrase = phrase;
+        this.options = options;
     }
 
     public String getPhrase() {
@@ -29,7 +32,7 @@ public class LexicalToken {
         }
 
         if (isInNegatedContext() && sentimentValue != 0) {
-            final double negationValue = ClassifierOptions.getVariable(ClassifierOptions.Variable.NEGATION_VALUE);
+            final double negationValue = options.getVariable(Variable.NEGATION_VALUE);
             sentimentValue = (sentimentValue > 0) ? sentimentValue - negationValue : sentimentValue + negationValue;
         }
         return sentimentValue;
@@ -4,7 +4,9 @@ import com.freva.masteroppgave.lexicon.container.Adjectives;
 import com.freva.masteroppgave.lexicon.container.TokenTrie;
 import com.freva.masteroppgave.preprocessing.filters.Filters;
 import com.freva.masteroppgave.preprocessing.filters.RegexFilters;
+import com.freva.masteroppgave.preprocessing.filters.TokenBuffer;
 import com.freva.masteroppgave.classifier.ClassifierOptions;
+import com.freva.masteroppgave.classifier.TokenRoles;
 import com.freva.masteroppgave.utils.MapUtils;
 import com.freva.masteroppgave.utils.reader.DataSetReader;
 import com.freva.masteroppgave.utils.progressbar.Progressable;
@@ -13,6 +15,8 @@ import com.freva.masteroppgave.utils.tools.Parallel;
 import java.util.*;
 
 public class LexiconCreator implements Progressable {
+    private static final int PSEUDO_COUNT = 4;
+
     private DataSetReader dataSetReader;
 
     /**
@@ -63,7 +67,8 @@ public class LexiconCreator implements Progressable {
 
     /**
      * Returns a map of n-gram and the number of times it appeared in positive context and the number of times it
-     * appeared in negative context in dataset file.
+     * appeared in negative context in dataset file. Every thread counts into a map of its own, and the maps are merged
+     * once the dataset is read.
      *
      * @param dataSetReader Dataset containing tweets and their classification
      * @param nGrams        n-grams to count occurrences for
@@ -73,42 +78,63 @@ public class LexiconCreator implements Progressable {
     private Map<String, Counter> countNGramsByPolarity(DataSetReader dataSetReader, Collection<String> nGrams, Filters filters) {
         this.dataSetReader = dataSetReader;
         TokenTrie tokenTrie = new TokenTrie(nGrams);
+        TokenRoles roles = new TokenRoles(null, ClassifierOptions.compileOptions());
 
-        Map<String, Counter> counter = new HashMap<>();
-        Parallel.For(dataSetReader, entry -> {
-            String tweet = filters.apply(entry.getTweet());
-            List<String> tokens = tokenTrie.findOptimalTokenization(RegexFilters.WHITESPACE.split(tweet));
+        List<CountingState> states = Parallel.For(dataSetReader.spliterator(), CountingState::new, (state, entry) -> {
+            TokenBuffer tweet = filters.apply(entry.getTweet(), state.buffer);
+            List<String> tokens = tokenTrie.findOptimalTokenization(tweet.getTokens(), 0, tweet.getNumTokens());
 
             for (String nGram : tokens) {
                 String[] nGramWords = RegexFilters.WHITESPACE.split(nGram);
-                if (containsIllegalWord(nGramWords)) continue;
-                if (!counter.containsKey(nGram)) counter.put(nGram, new Counter());
+                if (roles.containsIllegalWord(nGramWords)) continue;
 
+                Counter counter = state.counter.computeIfAbsent(nGram, key -> new Counter());
                 if (entry.getClassification().isPositive()) {
-                    counter.get(nGram).numPositive++;
+                    counter.numPositive++;
                 } else if (entry.getClassification().isNegative()) {
-                    counter.get(nGram).numNegative++;
+                    counter.numNegative++;
                 }
             }
         });
 
+        Map<String, Counter> counter = new HashMap<>();
+        for (CountingState state : states) {
+            if (counter.size() < state.counter.size()) {
+                Map<String, Counter> smaller = counter;
+                counter = state.counter;
+                state.counter = smaller;
+            }
+            for (Map.Entry<String, Counter> entry : state.counter.entrySet()) {
+                counter.merge(entry.getKey(), entry.getValue(), Counter::add);
+            }
+        }
         return counter;
     }
 
-    private static boolean containsIllegalWord(String[] nGram) {
-        return ClassifierOptions.isStopWord(nGram[nGram.length - 1]) || ClassifierOptions.containsIntensifier(nGram);
-    }
-
     public double getProgress() {
         return dataSetReader == null ? 0 : dataSetReader.getProgress();
     }
 
     private class Counter {
-        private int numPositive = 4;
-        private int numNegative = 4;
+        private int numPositive = PSEUDO_COUNT;
+        private int numNegative = PSEUDO_COUNT;
 
         private int getTotalOccurrences() {
             return numPositive + numNegative;
         }
+
+        /**
+         * Adds the occurrences counted by other to this counter, counting the pseudo counts only once
+         */
+        private Counter add(Counter other) {
+            numPositive += other.numPositive - PSEUDO_COUNT;
+            numNegative += other.numNegative - PSEUDO_COUNT;
+            return this;
+        }
+    }
+
+    private class CountingState {
+        private final TokenBuffer buffer = new TokenBuffer();
+        private Map<String, Counter> counter = new HashMap<>();
     }
 }
@@ -0,0 +1,372 @@
+package com.freva.masteroppgave.lexicon.container;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read only prior polarity lexicon stored in a memory mapped binary file, so that loading it does not require any
+ * parsing and processes on the same host share the file through the page cache. Strings (the phrases and the tokens of
+ * the phrase tree) are found with a minimal perfect hash (hash and displace): A string is hashed to a bucket, the
+ * bucket's displacement selects the second hash function which gives the string's slot. The slot's string is compared
+ * to the string looked up, since strings not in the lexicon also hash to some slot. Slots are used as the ids of a
+ * {@link Vocabulary} backed by the lexicon, so neither the phrases nor their polarities are copied to the heap.
+ *
+ * File layout (big endian):
+ * header:        MAGIC, VERSION, #phrases, #buckets, #strings, #trie nodes, #trie edges, reserved
+ * displacements: int[#buckets]
+ * values:        double[#strings], the polarity of the string in each slot, NaN if it is only a phrase tree token
+ * strings:       int[#strings + 1], char offset of the string in every slot
+ * trie:          firstEdges int[#nodes + 1], edge strings int[#edges], edge targets int[#edges], node strings
+ *                int[#nodes], omitted if #nodes is 0. Token and phrase ids are slots
+ * chars:         char[], the UTF-16 chars of all strings
+ */
+public class BinaryLexicon {
+    private static final int MAGIC = 0x50504C58;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8 * Integer.BYTES;
+    private static final int STRINGS_PER_BUCKET = 4;
+
+    private final ByteBuffer buffer;
+    private final int numPhrases, numBuckets, numStrings, numNodes, numEdges;
+    private final int displacementsOffset, valuesOffset, stringOffsetsOffset, trieOffset, charsOffset;
+
+    /**
+     * Maps file and checks that all the sections given by its header fit in it.
+     *
+     * @param file Binary lexicon file, see {@link #compile(Map, File, boolean)}
+     * @throws IOException If file is not a binary lexicon of this version, or is truncated
+     */
+    public BinaryLexicon(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a binary lexicon");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported binary lexicon version " + buffer.getInt(4) + " in " + file);
+        }
+
+        numPhrases = buffer.getInt(8);
+        numBuckets = buffer.getInt(12);
+        numStrings = buffer.getInt(16);
+        numNodes = buffer.getInt(20);
+        numEdges = buffer.getInt(24);
+        if (numPhrases < 0 || numBuckets <= 0 || numStrings < numPhrases || numNodes < 0 || numEdges < 0) {
+            throw new IOException("Corrupt binary lexicon header in " + file);
+        }
+
+        final long valuesStart = HEADER_SIZE + (long) numBuckets * Integer.BYTES;
+        final long stringOffsetsStart = valuesStart + (long) numStrings * Double.BYTES;
+        final long trieStart = stringOffsetsStart + (numStrings + 1L) * Integer.BYTES;
+        final long charsStart = trieStart + (numNodes == 0 ? 0 : (2L * numNodes + 1 + 2L * numEdges) * Integer.BYTES);
+        if (charsStart > buffer.limit()) {
+            throw new IOException("Truncated binary lexicon " + file + ": expected at least " + charsStart +
+                    " bytes, was " + buffer.limit());
+        }
+
+        displacementsOffset = HEADER_SIZE;
+        valuesOffset = (int) valuesStart;
+        stringOffsetsOffset = (int) stringOffsetsStart;
+        trieOffset = (int) trieStart;
+        charsOffset = (int) charsStart;
+
+        final int numChars = getStringOffset(numStrings);
+        if (numChars < 0 || charsOffset + (long) numChars * Character.BYTES > buffer.limit()) {
+            throw new IOException("Truncated binary lexicon " + file + ": strings end past the end of the file");
+        }
+    }
+
+
+    /**
+     * Writes lexicon to file in the binary format. The lexicon is written to a temporary file next to file, which then
+     * replaces file atomically, so processes that have the old file mapped keep reading the old lexicon.
+     *
+     * @param lexicon           Map of phrases and their prior polarity
+     * @param file              File to write to
+     * @param includePhraseTree Whether to also store the {@link TokenTrie} of the phrases
+     * @throws IOException
+     */
+    public static void compile(Map<String, Double> lexicon, File file, boolean includePhraseTree) throws IOException {
+        final List<String> strings = new ArrayList<>(lexicon.keySet());
+        final TokenTrie phraseTree = includePhraseTree ? new TokenTrie(lexicon.keySet()) : null;
+        if (phraseTree != null) {
+            final Vocabulary vocabulary = phraseTree.getVocabulary();
+            for (int id = 0; id < vocabulary.size(); id++) {
+                if (!lexicon.containsKey(vocabulary.getWord(id))) {
+                    strings.add(vocabulary.getWord(id));
+                }
+            }
+        }
+
+        final int numBuckets = Math.max(1, (strings.size() + STRINGS_PER_BUCKET - 1) / STRINGS_PER_BUCKET);
+        final int[] displacements = new int[numBuckets];
+        final String[] slots = placeStrings(strings, displacements);
+        final Map<String, Integer> slotIndices = new HashMap<>();
+        for (int i = 0; i < slots.length; i++) {
+            slotIndices.put(slots[i], i);
+        }
+
+        int[] firstEdges = new int[0], edgeStrings = new int[0], edgeTargets = new int[0], nodeStrings = new int[0];
+        if (phraseTree != null) {
+            firstEdges = phraseTree.getFirstEdges();
+            edgeTargets = phraseTree.getEdgeTargets();
+            edgeStrings = toSlots(phraseTree.getEdgeTokenIds(), phraseTree.getVocabulary(), slotIndices);
+            nodeStrings = toSlots(phraseTree.getPhraseIds(), phraseTree.getVocabulary(), slotIndices);
+        }
+
+        final File directory = file.getAbsoluteFile().getParentFile();
+        final File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                for (int value : new int[]{MAGIC, VERSION, lexicon.size(), numBuckets, slots.length,
+                        nodeStrings.length, edgeStrings.length, 0}) {
+                    out.writeInt(value);
+                }
+
+                writeInts(out, displacements);
+                for (String string : slots) {
+                    final Double value = lexicon.get(string);
+                    out.writeDouble(value == null ? Double.NaN : value);
+                }
+
+                int charOffset = 0;
+                for (String string : slots) {
+                    out.writeInt(charOffset);
+                    charOffset += string.length();
+                }
+                out.writeInt(charOffset);
+
+                if (nodeStrings.length > 0) {
+                    writeInts(out, firstEdges);
+                    writeInts(out, edgeStrings);
+                    writeInts(out, edgeTargets);
+                    writeInts(out, nodeStrings);
+                }
+
+                for (String string : slots) {
+                    out.writeChars(string);
+                }
+            }
+
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    /**
+     * Checks whether file starts like a binary lexicon, without mapping it.
+     */
+    public static boolean isBinaryLexicon(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return file.length() >= HEADER_SIZE && in.readInt() == MAGIC;
+        }
+    }
+
+
+    /**
+     * @return Number of phrases in the lexicon
+     */
+    public int size() {
+        return numPhrases;
+    }
+
+    /**
+     * @return Number of slots, the phrases and the phrase tree tokens that are not phrases themselves
+     */
+    public int getNumSlots() {
+        return numStrings;
+    }
+
+    /**
+     * @param phrase Phrase to look up
+     * @return Slot of phrase, or -1 if phrase is not in lexicon
+     */
+    public int getSlot(CharSequence phrase) {
+        final int slot = findSlot(phrase);
+        return slot != -1 && isPhrase(slot) ? slot : -1;
+    }
+
+    /**
+     * @param slot Slot in range [0, getNumSlots())
+     * @return Polarity of the phrase in slot, NaN if the slot holds a phrase tree token that is not a phrase
+     */
+    public double getValue(int slot) {
+        return buffer.getDouble(valuesOffset + slot * Double.BYTES);
+    }
+
+    public boolean isPhrase(int slot) {
+        return !Double.isNaN(getValue(slot));
+    }
+
+    /**
+     * @param slot Slot in range [0, getNumSlots())
+     * @return The string stored in slot
+     */
+    public String getString(int slot) {
+        final int start = getStringOffset(slot), end = getStringOffset(slot + 1);
+        final char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = buffer.getChar(charsOffset + (start + i) * Character.BYTES);
+        }
+        return new String(chars);
+    }
+
+    public boolean hasPhraseTree() {
+        return numNodes > 0;
+    }
+
+    /**
+     * Creates the stored phrase tree. Its token and phrase ids are slots, so it must use a vocabulary backed by this
+     * lexicon.
+     *
+     * @param vocabulary Vocabulary created by {@link Vocabulary#Vocabulary(BinaryLexicon)} for this lexicon
+     * @return The phrase tree, or null if the lexicon was compiled without it
+     */
+    public TokenTrie getPhraseTree(Vocabulary vocabulary) {
+        if (vocabulary.getBinaryLexicon() != this) {
+            throw new IllegalArgumentException("Phrase tree must use a vocabulary backed by the same binary lexicon");
+        }
+        if (!hasPhraseTree()) return null;
+
+        int offset = trieOffset;
+        final int[] firstEdges = readInts(offset, numNodes + 1);
+        final int[] edgeTokenIds = readInts(offset += (numNodes + 1) * Integer.BYTES, numEdges);
+        final int[] edgeTargets = readInts(offset += numEdges * Integer.BYTES, numEdges);
+        final int[] phraseIds = readInts(offset + numEdges * Integer.BYTES, numNodes);
+        return new TokenTrie(vocabulary, firstEdges, edgeTokenIds, edgeTargets, phraseIds);
+    }
+
+
+    /**
+     * @param string String to look up
+     * @return Slot of string, phrase or phrase tree token, or -1 if it is not stored
+     */
+    int findSlot(CharSequence string) {
+        if (numStrings == 0) return -1;
+
+        final int bucket = (int) Long.remainderUnsigned(hash(string, 0), numBuckets);
+        final int displacement = buffer.getInt(displacementsOffset + bucket * Integer.BYTES);
+        final int slot = (int) Long.remainderUnsigned(hash(string, displacement + 1), numStrings);
+        return stringEquals(slot, string) ? slot : -1;
+    }
+
+
+    private boolean stringEquals(int index, CharSequence string) {
+        final int start = getStringOffset(index), end = getStringOffset(index + 1);
+        if (end - start != string.length()) return false;
+
+        for (int i = 0; i < string.length(); i++) {
+            if (buffer.getChar(charsOffset + (start + i) * Character.BYTES) != string.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int getStringOffset(int index) {
+        return buffer.getInt(stringOffsetsOffset + index * Integer.BYTES);
+    }
+
+    private int[] readInts(int offset, int count) {
+        final int[] values = new int[count];
+        ByteBuffer ints = buffer.duplicate();
+        ints.position(offset);
+        ints.asIntBuffer().get(values);
+        return values;
+    }
+
+
+    /**
+     * Assigns every string to a unique slot by searching, for each bucket (largest first), for the smallest
+     * displacement that maps all the bucket's strings to free slots.
+     *
+     * @return Strings ordered by slot
+     */
+    private static String[] placeStrings(List<String> strings, int[] displacements) {
+        final int numSlots = strings.size();
+        final List<List<String>> buckets = new ArrayList<>();
+        for (int i = 0; i < displacements.length; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (String string : strings) {
+            buckets.get((int) Long.remainderUnsigned(hash(string, 0), displacements.length)).add(string);
+        }
+
+        final Integer[] bucketOrder = new Integer[displacements.length];
+        for (int i = 0; i < bucketOrder.length; i++) bucketOrder[i] = i;
+        Arrays.sort(bucketOrder, (b1, b2) -> buckets.get(b2).size() - buckets.get(b1).size());
+
+        final String[] slots = new String[numSlots];
+        for (int bucket : bucketOrder) {
+            final List<String> bucketStrings = buckets.get(bucket);
+            if (bucketStrings.isEmpty()) break;
+
+            final int[] bucketSlots = new int[bucketStrings.size()];
+            for (int displacement = 0; ; displacement++) {
+                if (displacement == Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Could not find displacement for bucket with " + bucketStrings);
+                }
+
+                if (findFreeSlots(bucketStrings, displacement, slots, bucketSlots)) {
+                    for (int i = 0; i < bucketSlots.length; i++) {
+                        slots[bucketSlots[i]] = bucketStrings.get(i);
+                    }
+                    displacements[bucket] = displacement;
+                    break;
+                }
+            }
+        }
+
+        return slots;
+    }
+
+    private static boolean findFreeSlots(List<String> strings, int displacement, String[] slots, int[] bucketSlots) {
+        for (int i = 0; i < bucketSlots.length; i++) {
+            bucketSlots[i] = (int) Long.remainderUnsigned(hash(strings.get(i), displacement + 1), slots.length);
+            if (slots[bucketSlots[i]] != null) return false;
+
+            for (int j = 0; j < i; j++) {
+                if (bucketSlots[i] == bucketSlots[j]) return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] toSlots(int[] vocabularyIds, Vocabulary vocabulary, Map<String, Integer> slotIndices) {
+        final int[] slots = new int[vocabularyIds.length];
+        for (int i = 0; i < vocabularyIds.length; i++) {
+            slots[i] = vocabularyIds[i] == Vocabulary.UNKNOWN ? Vocabulary.UNKNOWN :
+                    slotIndices.get(vocabulary.getWord(vocabularyIds[i]));
+        }
+        return slots;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the chars of string, seeded and finished with the MurmurHash3 mixer.
+     */
+    private static long hash(CharSequence string, long seed) {
+        long hash = 0xcbf29ce484222325L ^ (seed * 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < string.length(); i++) {
+            hash = (hash ^ string.charAt(i)) * 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
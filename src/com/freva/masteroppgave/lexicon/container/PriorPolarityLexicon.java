@@ -8,30 +8,143 @@ import java.io.IOException;
 import java.util.*;
 
 public class PriorPolarityLexicon {
-    private final Map<String, Double> polarityLexicon;
+    private final Vocabulary vocabulary;
+    private final StringDoubleMap polarityLexicon;
+    private final BinaryLexicon binaryLexicon;
+    private final double[] polarityById;
+    private TokenTrie phraseTree;
 
     public PriorPolarityLexicon(File file) throws IOException {
         this(readLexicon(file));
     }
 
     public PriorPolarityLexicon(Map<String, Double> polarityLexicon) {
-        this.polarityLexicon = polarityLexicon;
+        this.vocabulary = new Vocabulary();
+        this.polarityLexicon = new StringDoubleMap(polarityLexicon);
+        this.binaryLexicon = null;
+
+        int maxId = Vocabulary.UNKNOWN;
+        for (String phrase : polarityLexicon.keySet()) {
+            maxId = Math.max(maxId, vocabulary.register(phrase));
+        }
+
+        this.polarityById = new double[maxId + 1];
+        Arrays.fill(polarityById, Double.NaN);
+        for (Map.Entry<String, Double> entry : polarityLexicon.entrySet()) {
+            polarityById[vocabulary.getId(entry.getKey())] = entry.getValue();
+        }
+    }
+
+    /**
+     * Creates lexicon backed by a memory mapped {@link BinaryLexicon}. Phrases and their polarities are looked up
+     * directly in the mapped file, and the lexicon's slots are used as ids in its {@link Vocabulary}, so only the
+     * phrase tree is created on the heap.
+     *
+     * @param binaryLexicon Binary lexicon to use
+     */
+    public PriorPolarityLexicon(BinaryLexicon binaryLexicon) {
+        this.vocabulary = new Vocabulary(binaryLexicon);
+        this.polarityLexicon = null;
+        this.binaryLexicon = binaryLexicon;
+        this.polarityById = null;
+        this.phraseTree = binaryLexicon.getPhraseTree(vocabulary);
     }
 
+    /**
+     * Reads lexicon from either a binary lexicon (see {@link BinaryLexicon}) or JSON file.
+     *
+     * @param file Lexicon file
+     * @return The lexicon
+     * @throws IOException
+     */
+    public static PriorPolarityLexicon load(File file) throws IOException {
+        if (BinaryLexicon.isBinaryLexicon(file)) {
+            return new PriorPolarityLexicon(new BinaryLexicon(file));
+        }
+        return new PriorPolarityLexicon(file);
+    }
+
+    /**
+     * @param phrase Phrase to look up
+     * @return Polarity of the phrase, or NaN if phrase is not in the lexicon
+     */
     public double getTokenPolarity(String phrase) {
-        return polarityLexicon.get(phrase);
+        if (binaryLexicon != null) {
+            final int slot = binaryLexicon.getSlot(phrase);
+            return slot == -1 ? Double.NaN : binaryLexicon.getValue(slot);
+        }
+        return polarityLexicon.lookup(phrase);
     }
 
     public boolean hasToken(String word) {
+        if (binaryLexicon != null) {
+            return binaryLexicon.getSlot(word) != -1;
+        }
         return polarityLexicon.containsKey(word);
     }
 
+    /**
+     * @param phraseId Id of phrase in {@link #getVocabulary()}
+     * @return Polarity of the phrase, only defined if {@link #hasToken(int)} is true
+     */
+    public double getTokenPolarity(int phraseId) {
+        if (binaryLexicon != null) {
+            return binaryLexicon.getValue(phraseId);
+        }
+        return polarityById[phraseId];
+    }
+
+    public boolean hasToken(int phraseId) {
+        if (binaryLexicon != null) {
+            return phraseId >= 0 && phraseId < binaryLexicon.getNumSlots() && binaryLexicon.isPhrase(phraseId);
+        }
+        return phraseId >= 0 && phraseId < polarityById.length && !Double.isNaN(polarityById[phraseId]);
+    }
+
+    /**
+     * @return Vocabulary of the ids of the lexicon's phrases and the tokens of its phrase tree
+     */
+    public Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
     public Collection<String> getSubjectiveWords() {
-        return new ArrayList<>(polarityLexicon.keySet());
+        if (binaryLexicon != null) {
+            List<String> words = new ArrayList<>(binaryLexicon.size());
+            for (int slot = 0; slot < binaryLexicon.getNumSlots(); slot++) {
+                if (binaryLexicon.isPhrase(slot)) {
+                    words.add(binaryLexicon.getString(slot));
+                }
+            }
+            return words;
+        }
+        return polarityLexicon.keys();
     }
 
     public Map<String, Double> getLexicon() {
-        return new HashMap<>(polarityLexicon);
+        if (binaryLexicon != null) {
+            Map<String, Double> lexicon = new HashMap<>();
+            for (int slot = 0; slot < binaryLexicon.getNumSlots(); slot++) {
+                if (binaryLexicon.isPhrase(slot)) {
+                    lexicon.put(binaryLexicon.getString(slot), binaryLexicon.getValue(slot));
+                }
+            }
+            return lexicon;
+        }
+        return polarityLexicon.toMap();
+    }
+
+    /**
+     * Returns the phrase tree of the subjective words, which is either read from the binary lexicon or built on first
+     * use, and shared by all classifiers using this lexicon. The tree uses the lexicon's vocabulary.
+     *
+     * @return TokenTrie of the subjective words
+     */
+    public synchronized TokenTrie getPhraseTree() {
+        if (phraseTree == null) {
+            phraseTree = new TokenTrie(getSubjectiveWords(), vocabulary);
+        }
+        return phraseTree;
     }
 
 
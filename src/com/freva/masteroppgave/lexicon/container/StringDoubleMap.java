@@ -0,0 +1,145 @@
+package com.freva.masteroppgave.lexicon.container;
+
+import java.util.*;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * Open addressing (linear probing) hash map from String to primitive double. Keys, their hash codes and values are
+ * stored in parallel arrays, so a look up is a single probe sequence without boxing, and missing keys are reported
+ * by returning a caller supplied sentinel instead of requiring a separate containsKey call.
+ */
+public class StringDoubleMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private String[] keys;
+    private int[] hashes;
+    private double[] values;
+    private int size;
+
+    public StringDoubleMap() {
+        this(0);
+    }
+
+    public StringDoubleMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public StringDoubleMap(Map<String, Double> map) {
+        this(map.size());
+        map.forEach(this::put);
+    }
+
+
+    /**
+     * @param key          Key to look up
+     * @param missingValue Value to return if key is not in the map
+     * @return Value of key, or missingValue if key is not in the map
+     */
+    public double lookup(String key, double missingValue) {
+        final int slot = findSlot(key, key.hashCode());
+        return keys[slot] == null ? missingValue : values[slot];
+    }
+
+    /**
+     * @param key Key to look up
+     * @return Value of key, or NaN if key is not in the map
+     */
+    public double lookup(String key) {
+        return lookup(key, Double.NaN);
+    }
+
+    public boolean containsKey(String key) {
+        return keys[findSlot(key, key.hashCode())] != null;
+    }
+
+    public void put(String key, double value) {
+        final int hash = key.hashCode();
+        int slot = findSlot(key, hash);
+        if (keys[slot] == null) {
+            if (2 * (size + 1) > keys.length) {
+                rehash(2 * keys.length);
+                slot = findSlot(key, hash);
+            }
+
+            keys[slot] = key;
+            hashes[slot] = hash;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public List<String> keys() {
+        List<String> keyList = new ArrayList<>(size);
+        for (String key : keys) {
+            if (key != null) keyList.add(key);
+        }
+        return keyList;
+    }
+
+    public void forEach(ObjDoubleConsumer<String> action) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) action.accept(keys[slot], values[slot]);
+        }
+    }
+
+    public Map<String, Double> toMap() {
+        Map<String, Double> map = new HashMap<>(size);
+        forEach(map::put);
+        return map;
+    }
+
+
+    /**
+     * @return Slot containing key, or the empty slot where key would be inserted
+     */
+    private int findSlot(String key, int hash) {
+        final int mask = keys.length - 1;
+        int slot = mix(hash) & mask;
+        while (keys[slot] != null && (hashes[slot] != hash || !keys[slot].equals(key))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        final String[] oldKeys = keys;
+        final int[] oldHashes = hashes;
+        final double[] oldValues = values;
+        allocate(capacity);
+
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) continue;
+
+            int slot = mix(oldHashes[i]) & mask;
+            while (keys[slot] != null) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            hashes[slot] = oldHashes[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        values = new double[capacity];
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2 * expectedSize) capacity <<= 1;
+        return capacity;
+    }
+
+    /**
+     * Spreads String hash codes, which differ mostly in the low bits for similar strings, over the whole table.
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -6,30 +6,115 @@ import com.freva.masteroppgave.classifier.ClassifierOptions;
 import java.util.*;
 
 public class TokenTrie {
-    private Node root = new Node();
+    private static final ThreadLocal<Allocation> allocations = ThreadLocal.withInitial(Allocation::new);
+    private static final int ROOT = 0;
+    private static final int NO_NODE = -1;
+
+    private final Vocabulary vocabulary;
+    private final int[] rootChildren;
+    private final int[] firstEdges;
+    private final int[] edgeTokenIds;
+    private final int[] edgeTargets;
+    private final int[] phraseIds;
 
     /**
-     * Creates a phrase trie for efficient sub-phrase look up
+     * Creates a phrase trie for efficient sub-phrase look up. The trie is frozen after construction: Nodes are
+     * numbered in breadth first order and stored in flat arrays, where the outgoing edges of node n are
+     * [firstEdges[n], firstEdges[n + 1]) in edgeTokenIds, sorted by token id, and edge e leads to node edgeTargets[e].
+     * Children of the root are also indexed directly by token id, since every look up starts there.
+     *
+     * The trie gets a vocabulary of its own, so throwaway tries (f.ex. of candidate n-grams) leave nothing behind.
      *
      * @param sentences Collection of Strings of all the phrases which are whitespace delimited n-grams
      */
     public TokenTrie(Collection<String> sentences) {
+        this(sentences, new Vocabulary());
+    }
+
+    /**
+     * Same as {@link #TokenTrie(Collection)}, but registers the tokens and phrases in the given vocabulary, f.ex. the
+     * one of the lexicon the phrases are from.
+     *
+     * @param sentences  Collection of Strings of all the phrases which are whitespace delimited n-grams
+     * @param vocabulary Vocabulary to register the tokens and phrases in
+     */
+    public TokenTrie(Collection<String> sentences, Vocabulary vocabulary) {
+        this.vocabulary = vocabulary;
+        BuilderNode builderRoot = new BuilderNode();
+        int numNodes = 1;
         for (String sentence : sentences) {
-            String[] words = RegexFilters.WHITESPACE.split(sentence);
-            addTokenSequence(words);
+            numNodes += addTokenSequence(builderRoot, RegexFilters.WHITESPACE.split(sentence));
+        }
+
+        firstEdges = new int[numNodes + 1];
+        edgeTokenIds = new int[numNodes - 1];
+        edgeTargets = new int[numNodes - 1];
+        phraseIds = new int[numNodes];
+
+        List<BuilderNode> queue = new ArrayList<>(numNodes);
+        queue.add(builderRoot);
+        for (int node = 0, edge = 0; node < queue.size(); node++) {
+            BuilderNode builderNode = queue.get(node);
+            firstEdges[node] = edge;
+            phraseIds[node] = builderNode.phraseId;
+
+            for (Map.Entry<Integer, BuilderNode> child : builderNode.children.entrySet()) {
+                edgeTokenIds[edge] = child.getKey();
+                edgeTargets[edge] = ++edge;
+                queue.add(child.getValue());
+            }
         }
+        firstEdges[numNodes] = numNodes - 1;
+        rootChildren = indexRootChildren();
+    }
+
+    /**
+     * Creates a phrase trie from an already built node layout (f.ex. read from a {@link BinaryLexicon}) where the
+     * token and phrase ids have been translated to ids of vocabulary. The edges of every node are sorted by token id in
+     * place.
+     *
+     * @param vocabulary   Vocabulary the token and phrase ids are from
+     * @param firstEdges   Index of the first outgoing edge of every node, with the number of edges at the end
+     * @param edgeTokenIds Token id of every edge
+     * @param edgeTargets  Node every edge leads to
+     * @param phraseIds    Id of the phrase ending at every node, or {@link Vocabulary#UNKNOWN}
+     */
+    TokenTrie(Vocabulary vocabulary, int[] firstEdges, int[] edgeTokenIds, int[] edgeTargets, int[] phraseIds) {
+        this.vocabulary = vocabulary;
+        this.firstEdges = firstEdges;
+        this.edgeTokenIds = edgeTokenIds;
+        this.edgeTargets = edgeTargets;
+        this.phraseIds = phraseIds;
+
+        for (int node = 0; node < phraseIds.length; node++) {
+            sortEdges(firstEdges[node], firstEdges[node + 1]);
+        }
+        rootChildren = indexRootChildren();
     }
 
 
-    public void addTokenSequence(String[] tokenSequence) {
-        Node tree = root;
+    /**
+     * Adds a phrase to the tree. Every token and the whole (single space joined) phrase are registered in the trie's
+     * vocabulary, the id of the whole phrase is stored at the node where the phrase ends.
+     *
+     * @param tokenSequence Tokens of the phrase
+     * @return Number of new nodes
+     */
+    private int addTokenSequence(BuilderNode root, String[] tokenSequence) {
+        BuilderNode tree = root;
+        int newNodes = 0;
         for (String token : tokenSequence) {
-            if (!tree.hasChild(token)) {
-                tree.addChild(token);
+            final int tokenId = vocabulary.register(token);
+            BuilderNode child = tree.children.get(tokenId);
+            if (child == null) {
+                child = new BuilderNode();
+                tree.children.put(tokenId, child);
+                newNodes++;
             }
-            tree = tree.getChild(token);
+            tree = child;
         }
-        tree.setPhraseEnd(true);
+        tree.phraseId = vocabulary.register(String.join(" ", tokenSequence));
+        return newNodes;
     }
 
 
@@ -46,36 +131,42 @@ public class TokenTrie {
     public Boolean hasTokens(String[] phrase) {
         if (phrase.length == 1 && ClassifierOptions.isSpecialClassWord(phrase[0])) return true;
 
-        Node tree = root;
-        for (String token : phrase) {
-            if (!tree.hasChild(token)) return false;
-            tree = tree.getChild(token);
+        return hasTokens(getTokenIds(phrase));
+    }
+
+
+    /**
+     * Same as {@link #hasTokens(String[])}, but for a phrase given as ids of {@link #getVocabulary()}.
+     *
+     * @param phrase Ids of the phrase or sub-phrase to look up
+     * @return true if phrase is in the tree, null if it is part of a longer phrase, false otherwise
+     */
+    public Boolean hasTokens(int[] phrase) {
+        int node = ROOT;
+        for (int token : phrase) {
+            node = getChild(node, token);
+            if (node == NO_NODE) return false;
         }
 
-        return tree.isEndOfPhrase() ? true : null;
+        return phraseIds[node] != Vocabulary.UNKNOWN ? true : null;
     }
 
 
     /**
-     * Finds word-ranges all of phrases in tokens stored in TokenTrie
+     * Finds word-ranges all of phrases in tokens stored in TokenTrie. The trie is walked once from every start index,
+     * until the following tokens no longer are part of any phrase.
      *
-     * @param tokens Sequence of tokens to find phrases in
+     * @param tokens Sequence of ids of {@link #getVocabulary()} to find phrases in
      * @return List of Tokens found in tokens
      */
-    public List<Token> findTrackedWords(String[] tokens) {
+    public List<Token> findTrackedWords(int[] tokens) {
         List<Token> trackedWords = new ArrayList<>();
 
         for (int i = 0; i < tokens.length; i++) {
-            for (int j = i + 1; j <= tokens.length; j++) {
-                String[] phrase = Arrays.copyOfRange(tokens, i, j);
-                Boolean status = hasTokens(phrase);
-
-                if (status != null) {
-                    if (status.equals(true)) {
-                        trackedWords.add(new Token(phrase, i, j - 1));
-                    } else if (status.equals(false)) {
-                        break;
-                    }
+            int node = ROOT;
+            for (int j = i; j < tokens.length && (node = getChild(node, tokens[j])) != NO_NODE; j++) {
+                if (phraseIds[node] != Vocabulary.UNKNOWN) {
+                    trackedWords.add(new Token(phraseIds[node], i, j));
                 }
             }
         }
@@ -86,53 +177,82 @@ public class TokenTrie {
     /**
      * Finds longest, non-overlapping word-ranges of phrases in tokens stored in TokenTrie
      *
-     * @param tokens tokens tokenize
+     * @param tokens Ids of {@link #getVocabulary()} of tokens to tokenize
      * @return Optimal allocation of tokens to phrases
      */
-    public List<Token> findOptimalAllocation(String[] tokens) {
-        List<Token> tokenRanges = findTrackedWords(tokens);
-        Collections.sort(tokenRanges);
-
-        for (int offset = 1; offset < tokenRanges.size(); offset++) {
-            Iterator<Token> iter = tokenRanges.listIterator(offset);
-
-            while (iter.hasNext()) {
-                Token candidate = iter.next();
-                for (int i = 0; i < offset; i++) {
-                    if (tokenRanges.get(i).overlapsWith(candidate)) {
-                        iter.remove();
-                        break;
-                    }
+    public List<Token> findOptimalAllocation(int[] tokens) {
+        Allocation allocation = allocations.get();
+        findOptimalAllocation(tokens, 0, tokens.length, allocation);
+
+        List<Token> tokenRanges = new ArrayList<>(allocation.size());
+        for (int i = 0; i < allocation.size(); i++) {
+            tokenRanges.add(new Token(allocation.getPhraseId(i), allocation.getStartIndex(i), allocation.getEndIndex(i)));
+        }
+        return tokenRanges;
+    }
+
+
+    /**
+     * Finds longest, non-overlapping word-ranges of phrases in tokens[from, to) without any intermediate arrays or
+     * Token objects. Phrases are picked greedily, longest first, and of phrases with equal length the one starting
+     * last is picked first. All the phrases are found by walking the trie once from each start index, and are then
+     * ordered by a counting sort on their length, so the time is linear in the number of phrases found.
+     *
+     * @param tokens     Ids of {@link #getVocabulary()} of tokens to tokenize
+     * @param from       Index of the first token to tokenize
+     * @param to         Index after the last token to tokenize
+     * @param allocation Reusable buffer to write the index ranges and ids of the phrases to, ordered by start index
+     */
+    public void findOptimalAllocation(int[] tokens, int from, int to, Allocation allocation) {
+        allocation.clear(to);
+
+        for (int i = from; i < to; i++) {
+            int node = ROOT;
+            for (int j = i; j < to && (node = getChild(node, tokens[j])) != NO_NODE; j++) {
+                if (phraseIds[node] != Vocabulary.UNKNOWN) {
+                    allocation.addMatch(phraseIds[node], i, j);
                 }
             }
         }
 
-        Collections.sort(tokenRanges, ((o1, o2) -> o1.getStartIndex() - o2.getStartIndex()));
-        return tokenRanges;
+        allocation.selectLongestMatches(from, to);
     }
 
 
     /**
-     * Similar to {@link #findOptimalAllocation(String[])}, but also includes the words not matching any longer n-gram
+     * Similar to {@link #findOptimalAllocation(int[])}, but also includes the words not matching any longer n-gram
      * in TokenTrie as singletons.
      *
      * @param tokens tokens to tokenize
      * @return Optimal allocation of tokens to phrases, with non matching tokens as singletons.
      */
     public List<String> findOptimalTokenization(String[] tokens) {
-        List<TokenTrie.Token> tokenRanges = findOptimalAllocation(tokens);
+        return findOptimalTokenization(tokens, 0, tokens.length);
+    }
+
+    /**
+     * Same as {@link #findOptimalTokenization(String[])}, but only tokenizes tokens[from, to)
+     */
+    public List<String> findOptimalTokenization(String[] tokens, int from, int to) {
+        int[] tokenIds = new int[to];
+        for (int i = from; i < to; i++) {
+            tokenIds[i] = vocabulary.getId(tokens[i]);
+        }
+
+        Allocation allocation = allocations.get();
+        findOptimalAllocation(tokenIds, from, to, allocation);
         List<String> tokenizedSentence = new ArrayList<>();
 
-        int setIndex = 0;
-        for (TokenTrie.Token token : tokenRanges) {
-            while (setIndex < token.getStartIndex()) {
+        int setIndex = from;
+        for (int i = 0; i < allocation.size(); i++) {
+            while (setIndex < allocation.getStartIndex(i)) {
                 tokenizedSentence.add(tokens[setIndex++]);
             }
-            tokenizedSentence.add(String.join(" ", token.getTokenSequence()));
-            setIndex = token.getEndIndex() + 1;
+            tokenizedSentence.add(vocabulary.getWord(allocation.getPhraseId(i)));
+            setIndex = allocation.getEndIndex(i) + 1;
         }
 
-        while (setIndex < tokens.length) {
+        while (setIndex < to) {
             tokenizedSentence.add(tokens[setIndex++]);
         }
 
@@ -140,18 +260,228 @@ public class TokenTrie {
     }
 
 
+    private int[] indexRootChildren() {
+        int maxTokenId = Vocabulary.UNKNOWN;
+        for (int edge = firstEdges[ROOT]; edge < firstEdges[ROOT + 1]; edge++) {
+            maxTokenId = Math.max(maxTokenId, edgeTokenIds[edge]);
+        }
+
+        int[] rootChildren = new int[maxTokenId + 1];
+        Arrays.fill(rootChildren, NO_NODE);
+        for (int edge = firstEdges[ROOT]; edge < firstEdges[ROOT + 1]; edge++) {
+            rootChildren[edgeTokenIds[edge]] = edgeTargets[edge];
+        }
+        return rootChildren;
+    }
+
+    private void sortEdges(int from, int to) {
+        if (to - from < 2) return;
+
+        long[] edges = new long[to - from];
+        for (int i = from; i < to; i++) {
+            edges[i - from] = ((long) edgeTokenIds[i] << 32) | edgeTargets[i];
+        }
+
+        Arrays.sort(edges);
+        for (int i = from; i < to; i++) {
+            edgeTokenIds[i] = (int) (edges[i - from] >>> 32);
+            edgeTargets[i] = (int) edges[i - from];
+        }
+    }
+
+    private int getChild(int node, int tokenId) {
+        if (node == ROOT) {
+            return tokenId >= 0 && tokenId < rootChildren.length ? rootChildren[tokenId] : NO_NODE;
+        }
+
+        final int edge = Arrays.binarySearch(edgeTokenIds, firstEdges[node], firstEdges[node + 1], tokenId);
+        return edge >= 0 ? edgeTargets[edge] : NO_NODE;
+    }
+
+
+    /**
+     * @return Vocabulary of the ids of the tokens and phrases in the trie
+     */
+    public Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+    int[] getFirstEdges() {
+        return firstEdges;
+    }
+
+    int[] getEdgeTokenIds() {
+        return edgeTokenIds;
+    }
+
+    int[] getEdgeTargets() {
+        return edgeTargets;
+    }
+
+    int[] getPhraseIds() {
+        return phraseIds;
+    }
+
+
+    /**
+     * Converts tokens to their ids in {@link #getVocabulary()}, unregistered tokens become {@link Vocabulary#UNKNOWN}.
+     *
+     * @param tokens Tokens to look up
+     * @return Array with the id of each token
+     */
+    public int[] getTokenIds(String[] tokens) {
+        int[] tokenIds = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            tokenIds[i] = vocabulary.getId(tokens[i]);
+        }
+        return tokenIds;
+    }
+
+
+    /**
+     * Reusable buffer of phrase index ranges, as found by
+     * {@link #findOptimalAllocation(int[], int, int, Allocation)}. Not thread safe, every thread should use its own.
+     */
+    public static class Allocation {
+        private int[] matchPhraseIds = new int[64], matchStarts = new int[64], matchEnds = new int[64];
+        private int[] matchOrder = new int[64];
+        private int numMatches;
+
+        private int[] lengthOffsets = new int[16];
+        private int[] selectedAt = new int[64];
+        private boolean[] covered = new boolean[64];
+
+        private int[] phraseIds = new int[64], startIndices = new int[64], endIndices = new int[64];
+        private int size;
+
+        public int size() {
+            return size;
+        }
+
+        public int getPhraseId(int i) {
+            return phraseIds[i];
+        }
+
+        public int getStartIndex(int i) {
+            return startIndices[i];
+        }
+
+        public int getEndIndex(int i) {
+            return endIndices[i];
+        }
+
+        private void clear(int numTokens) {
+            numMatches = 0;
+            size = 0;
+            if (selectedAt.length < numTokens) {
+                selectedAt = new int[Math.max(numTokens, 2 * selectedAt.length)];
+                covered = new boolean[selectedAt.length];
+            }
+        }
+
+        private void addMatch(int phraseId, int start, int end) {
+            if (numMatches == matchPhraseIds.length) {
+                final int capacity = 2 * numMatches;
+                matchPhraseIds = Arrays.copyOf(matchPhraseIds, capacity);
+                matchStarts = Arrays.copyOf(matchStarts, capacity);
+                matchEnds = Arrays.copyOf(matchEnds, capacity);
+                matchOrder = new int[capacity];
+            }
+
+            matchPhraseIds[numMatches] = phraseId;
+            matchStarts[numMatches] = start;
+            matchEnds[numMatches] = end;
+            numMatches++;
+        }
+
+        /**
+         * Orders the matches by length descending, then start index descending, and picks every match that does not
+         * overlap an already picked one. Matches were added in ascending start order, so placing them in reverse into
+         * their length bucket gives the descending start order within each bucket.
+         */
+        private void selectLongestMatches(int from, int to) {
+            int maxLength = 0;
+            for (int m = 0; m < numMatches; m++) {
+                maxLength = Math.max(maxLength, matchEnds[m] - matchStarts[m] + 1);
+            }
+            if (lengthOffsets.length <= maxLength) {
+                lengthOffsets = new int[2 * maxLength];
+            }
+
+            Arrays.fill(lengthOffsets, 0, maxLength + 1, 0);
+            for (int m = 0; m < numMatches; m++) {
+                lengthOffsets[lengthBucket(m, maxLength) + 1]++;
+            }
+            for (int b = 1; b <= maxLength; b++) {
+                lengthOffsets[b] += lengthOffsets[b - 1];
+            }
+            for (int m = numMatches - 1; m >= 0; m--) {
+                matchOrder[lengthOffsets[lengthBucket(m, maxLength)]++] = m;
+            }
+
+            Arrays.fill(selectedAt, from, to, -1);
+            Arrays.fill(covered, from, to, false);
+            for (int k = 0; k < numMatches; k++) {
+                final int m = matchOrder[k];
+                if (isCovered(matchStarts[m], matchEnds[m])) continue;
+
+                Arrays.fill(covered, matchStarts[m], matchEnds[m] + 1, true);
+                selectedAt[matchStarts[m]] = m;
+            }
+
+            for (int i = from; i < to; i++) {
+                if (selectedAt[i] != -1) {
+                    add(matchPhraseIds[selectedAt[i]], matchStarts[selectedAt[i]], matchEnds[selectedAt[i]]);
+                }
+            }
+        }
+
+        private int lengthBucket(int match, int maxLength) {
+            return maxLength - (matchEnds[match] - matchStarts[match] + 1);
+        }
+
+        private boolean isCovered(int start, int end) {
+            for (int i = start; i <= end; i++) {
+                if (covered[i]) return true;
+            }
+            return false;
+        }
+
+        private void add(int phraseId, int start, int end) {
+            if (size == phraseIds.length) {
+                final int capacity = 2 * size;
+                phraseIds = Arrays.copyOf(phraseIds, capacity);
+                startIndices = Arrays.copyOf(startIndices, capacity);
+                endIndices = Arrays.copyOf(endIndices, capacity);
+            }
+
+            phraseIds[size] = phraseId;
+            startIndices[size] = start;
+            endIndices[size] = end;
+            size++;
+        }
+    }
+
+
     public class Token implements Comparable<Token> {
         private final int startIndex, endIndex;
-        private final String[] tokenSequence;
+        private final int phraseId;
 
-        public Token(String[] tokenSequence, int startIndex, int endIndex) {
-            this.tokenSequence = tokenSequence;
+        public Token(int phraseId, int startIndex, int endIndex) {
+            this.phraseId = phraseId;
             this.startIndex = startIndex;
             this.endIndex = endIndex;
         }
 
-        public String[] getTokenSequence() {
-            return tokenSequence;
+        /**
+         * @return Id of the whole phrase in the trie's vocabulary
+         */
+        public int getPhraseId() {
+            return phraseId;
+        }
+
+        public String getPhrase() {
+            return vocabulary.getWord(phraseId);
         }
 
         public int getStartIndex() {
@@ -183,28 +513,8 @@ public class TokenTrie {
     }
 
 
-    private class Node {
-        private Map<String, Node> children = new HashMap<>();
-        private boolean endOfPhrase = false;
-
-        public boolean hasChild(String value) {
-            return children.containsKey(value);
-        }
-
-        public void addChild(String value) {
-            children.put(value, new Node());
-        }
-
-        public Node getChild(String value) {
-            return children.get(value);
-        }
-
-        public void setPhraseEnd(boolean phraseEnd) {
-            endOfPhrase = phraseEnd;
-        }
-
-        public boolean isEndOfPhrase() {
-            return endOfPhrase;
-        }
+    private static class BuilderNode {
+        private final Map<Integer, BuilderNode> children = new TreeMap<>();
+        private int phraseId = Vocabulary.UNKNOWN;
     }
 }
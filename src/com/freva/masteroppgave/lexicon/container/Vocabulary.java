@@ -0,0 +1,96 @@
+package com.freva.masteroppgave.lexicon.container;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense integer ids of the words and phrases of one model, f.ex. a lexicon and its phrase tree, so that the model's
+ * containers can use them as array indices. Every {@link PriorPolarityLexicon} has its own vocabulary, which is shared
+ * by its phrase tree and the scorers using it, and is dropped together with the lexicon.
+ *
+ * A vocabulary backed by a {@link BinaryLexicon} uses the lexicon's slots as the ids of the strings stored in it, so
+ * they are looked up in the mapped file rather than copied to the heap. Words registered later get ids after the slots.
+ */
+public class Vocabulary {
+    public static final int UNKNOWN = -1;
+
+    private final BinaryLexicon binaryLexicon;
+    private final int firstId;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] words = new String[16];
+    private volatile int size = 0;
+
+    public Vocabulary() {
+        this.binaryLexicon = null;
+        this.firstId = 0;
+    }
+
+    /**
+     * @param binaryLexicon Binary lexicon whose slots are the ids of the strings stored in it
+     */
+    public Vocabulary(BinaryLexicon binaryLexicon) {
+        this.binaryLexicon = binaryLexicon;
+        this.firstId = binaryLexicon.getNumSlots();
+    }
+
+    /**
+     * Returns the dense integer id of a word (or whitespace delimited phrase). Ids are only assigned by
+     * {@link #register(String)}, so words that are not part of the model are UNKNOWN.
+     *
+     * @param word Word to look up
+     * @return Id of the word, or UNKNOWN if the word has never been registered
+     */
+    public int getId(String word) {
+        if (binaryLexicon != null) {
+            final int slot = binaryLexicon.findSlot(word);
+            if (slot != -1) return slot;
+        }
+
+        final Integer id = ids.get(word);
+        return id == null ? UNKNOWN : id;
+    }
+
+    /**
+     * Assigns the next free id to word, unless it already has one. Ids are never reused or reassigned, so they can be
+     * used as array indices by all the containers sharing the vocabulary.
+     *
+     * @param word Word to register
+     * @return Id of the word
+     */
+    public synchronized int register(String word) {
+        final int existing = getId(word);
+        if (existing != UNKNOWN) {
+            return existing;
+        }
+
+        if (size == words.length) {
+            words = Arrays.copyOf(words, 2 * size);
+        }
+        words[size] = word;
+        ids.put(word, firstId + size);
+        return firstId + size++;
+    }
+
+    /**
+     * @param id Id of a registered word
+     * @return The word the id was assigned to
+     */
+    public String getWord(int id) {
+        return id < firstId ? binaryLexicon.getString(id) : words[id - firstId];
+    }
+
+    /**
+     * @return Number of ids assigned, ids are in range [0, size())
+     */
+    public int size() {
+        return firstId + size;
+    }
+
+    /**
+     * @return The binary lexicon backing the vocabulary, or null
+     */
+    BinaryLexicon getBinaryLexicon() {
+        return binaryLexicon;
+    }
+}
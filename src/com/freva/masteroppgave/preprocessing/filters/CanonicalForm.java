@@ -6,20 +6,73 @@ import com.google.gson.reflect.TypeToken;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
 public class CanonicalForm {
-    private static Map<String, Set<String>> dictionary = new HashMap<>();
+    private static volatile Map<String, Set<String>> dictionary = new HashMap<>();
+    private static volatile int dictionaryVersion = 0;
 
     public static void loadDictionary(File file) throws IOException {
-        dictionary = JSONUtils.fromJSON(FileUtils.readEntireFileIntoString(file), new TypeToken<Map<String, Set<String>>>(){});
+        dictionary = readDictionary(file);
+        dictionaryVersion++;
+    }
+
+    /**
+     * Reads a dictionary without loading it, so it can be given to a {@link TweetNormalizer} of its own.
+     *
+     * @param file JSON file with canonical forms and the words that have them
+     * @return The dictionary
+     * @throws IOException
+     */
+    public static Map<String, Set<String>> readDictionary(File file) throws IOException {
+        return JSONUtils.fromJSON(FileUtils.readEntireFileIntoString(file), new TypeToken<Map<String, Set<String>>>(){});
+    }
+
+    public static Map<String, Set<String>> getDictionary() {
+        return Collections.unmodifiableMap(dictionary);
+    }
+
+    /**
+     * @return The loaded dictionary itself, read once by callers that must use the same dictionary for a whole text
+     */
+    static Map<String, Set<String>> getLoadedDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return Number of times a dictionary has been loaded, lets callers that derive data from the dictionary detect
+     * that it has been replaced
+     */
+    public static int getDictionaryVersion() {
+        return dictionaryVersion;
+    }
+
+    public static boolean hasDictionary() {
+        return !dictionary.isEmpty();
     }
 
     public static String correctWordViaCanonical(String text) {
-        String canonical = Filters.removeRepeatingCharacters(text);
+        return correctWordViaCanonical(text, Filters.removeRepeatingCharacters(text));
+    }
 
+    /**
+     * Same as {@link #correctWordViaCanonical(String)}, for callers that have already computed the canonical form
+     * @param text      Word to correct
+     * @param canonical text with repeating characters removed
+     * @return Closest word in dictionary with the same canonical form, or text if there is none
+     */
+    public static String correctWordViaCanonical(String text, String canonical) {
+        return correctWordViaCanonical(dictionary, text, canonical);
+    }
+
+    /**
+     * Same as {@link #correctWordViaCanonical(String, String)}, but looks the word up in the given dictionary instead
+     * of the loaded one
+     */
+    public static String correctWordViaCanonical(Map<String, Set<String>> dictionary, String text, String canonical) {
         Set<String> candidates = dictionary.get(canonical);
         if(candidates == null) {
             return text;
@@ -28,6 +28,23 @@ public class Filters {
         return tokenChain(text, tokenFilters).trim();
     }
 
+    /**
+     * Same as {@link #apply(String)}, but writes the filtered text, split into sentences and words, into buffer
+     * instead of returning it as a String.
+     *
+     * @param text   String to filter
+     * @param buffer Buffer to write the filtered text to
+     * @return buffer
+     */
+    public TokenBuffer apply(String text, TokenBuffer buffer) {
+        text = stringChain(text, stringFilters);
+        if (tokenFilters == null) return buffer.set(text.trim());
+
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        appendTokenChain(text, tokenFilters, sb);
+        return buffer.setTrimmed(sb);
+    }
+
     /**
      * Chain several filters after each other, applies the filter on the entire string
      *
@@ -57,6 +74,11 @@ public class Filters {
         if (filters == null) return text;
 
         StringBuilder sb = new StringBuilder();
+        appendTokenChain(text, filters, sb);
+        return sb.toString();
+    }
+
+    private static void appendTokenChain(String text, Iterable<Function<String, String>> filters, StringBuilder sb) {
         for (String token : RegexFilters.WHITESPACE.split(text)) {
             if (!ClassifierOptions.isSpecialClassWord(token)) {
                 token = Filters.stringChain(token, filters);
@@ -64,8 +86,6 @@ public class Filters {
 
             sb.append(token).append(" ");
         }
-
-        return sb.toString();
     }
 
     /**
@@ -0,0 +1,243 @@
+package com.freva.masteroppgave.preprocessing.filters;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffer holding a filtered text split into sentences of words, as emitted by
+ * {@link Filters#apply(String, TokenBuffer)}. Sentences end at {@link RegexFilters#SENTENCE_END_PUNCTUATION} and
+ * words are split on {@link RegexFilters#WHITESPACE} with the same semantics as {@link java.util.regex.Pattern#split},
+ * so consumers get exactly the words they would get from splitting the filtered String, without the String itself,
+ * its sentence substrings or a second split. Not thread safe.
+ */
+public class TokenBuffer implements CharSequence {
+    /**
+     * Punctuation of the last sentence of a text, which is not ended by any punctuation
+     */
+    public static final char NO_PUNCTUATION = 0;
+
+    private char[] text = new char[256];
+    private int length;
+
+    private final Words words = new Words();
+    private int[] sentenceEnds = new int[8];
+    private char[] punctuation = new char[8];
+    private int numSentences;
+
+    private final Words tokens = new Words();
+    private boolean tokensSplit;
+
+    /**
+     * Replaces the content of this buffer by text.
+     *
+     * @param text Filtered text, which is not trimmed
+     * @return This buffer
+     */
+    public TokenBuffer set(String text) {
+        text.getChars(0, text.length(), reserve(text.length()), 0);
+        return split(text.length());
+    }
+
+    /**
+     * Replaces the content of this buffer by text with leading and trailing characters up to ' ' removed, the same
+     * way {@link String#trim()} does.
+     */
+    TokenBuffer setTrimmed(StringBuilder text) {
+        final int start = trimStart(text, 0, text.length()), end = trimEnd(text, start, text.length());
+        text.getChars(start, end, reserve(end - start), 0);
+        return split(end - start);
+    }
+
+    TokenBuffer setTrimmed(char[] text, int start, int end) {
+        while (start < end && text[start] <= ' ') start++;
+        while (start < end && text[end - 1] <= ' ') end--;
+        System.arraycopy(text, start, reserve(end - start), 0, end - start);
+        return split(end - start);
+    }
+
+
+    /**
+     * @return Number of sentences with at least one word
+     */
+    public int getNumSentences() {
+        return numSentences;
+    }
+
+    /**
+     * @param sentence Index of sentence
+     * @return Index of the first word of the sentence
+     */
+    public int getSentenceStart(int sentence) {
+        return sentence == 0 ? 0 : sentenceEnds[sentence - 1];
+    }
+
+    /**
+     * @param sentence Index of sentence
+     * @return Index after the last word of the sentence
+     */
+    public int getSentenceEnd(int sentence) {
+        return sentenceEnds[sentence];
+    }
+
+    /**
+     * @param sentence Index of sentence
+     * @return Punctuation character that ended the sentence, or {@link #NO_PUNCTUATION} for the last sentence
+     */
+    public char getPunctuation(int sentence) {
+        return punctuation[sentence];
+    }
+
+    /**
+     * @return Words of all the sentences, only the first {@link #getNumWords()} are valid
+     */
+    public String[] getWords() {
+        return words.values;
+    }
+
+    public int getNumWords() {
+        return words.size;
+    }
+
+
+    /**
+     * Returns the whitespace delimited tokens of the whole text, ignoring sentence punctuation, the same as
+     * RegexFilters.WHITESPACE.split(text). They are only split on first call after the buffer is set.
+     *
+     * @return Tokens of the text, only the first {@link #getNumTokens()} are valid
+     */
+    public String[] getTokens() {
+        splitTokens();
+        return tokens.values;
+    }
+
+    public int getNumTokens() {
+        splitTokens();
+        return tokens.size;
+    }
+
+    /**
+     * @return Length of the filtered text
+     */
+    public int length() {
+        return length;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+        }
+        return text[index];
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    /**
+     * @return The filtered text as String
+     */
+    public String toString() {
+        return new String(text, 0, length);
+    }
+
+
+    private char[] reserve(int length) {
+        if (text.length < length) {
+            text = new char[Math.max(2 * text.length, length)];
+        }
+        return text;
+    }
+
+    private TokenBuffer split(int length) {
+        this.length = length;
+        this.words.size = 0;
+        this.numSentences = 0;
+        this.tokensSplit = false;
+
+        int sentenceStart = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = text[i];
+            if (c == '!' || c == '?' || c == ',' || c == '.') {
+                addSentence(sentenceStart, i, c);
+                sentenceStart = i + 1;
+            }
+        }
+
+        addSentence(sentenceStart, length, NO_PUNCTUATION);
+        return this;
+    }
+
+    private void addSentence(int start, int end, char sentencePunctuation) {
+        splitWhitespace(start, end, words);
+        if (words.size == getSentenceStart(numSentences)) return;
+
+        if (numSentences == sentenceEnds.length) {
+            sentenceEnds = Arrays.copyOf(sentenceEnds, 2 * numSentences);
+            punctuation = Arrays.copyOf(punctuation, 2 * numSentences);
+        }
+        sentenceEnds[numSentences] = words.size;
+        punctuation[numSentences] = sentencePunctuation;
+        numSentences++;
+    }
+
+    private void splitTokens() {
+        if (!tokensSplit) {
+            tokens.size = 0;
+            splitWhitespace(0, length, tokens);
+            tokensSplit = true;
+        }
+    }
+
+    /**
+     * Adds text[start, end) split on whitespace to words: an empty range gives a single empty word, leading whitespace
+     * gives an empty first word and whitespace only gives no words at all.
+     */
+    private void splitWhitespace(int start, int end, Words words) {
+        if (start == end) {
+            words.add("");
+            return;
+        }
+
+        int i = start;
+        while (i < end && isWhitespace(text[i])) i++;
+        if (i > start && i < end) {
+            words.add("");
+        }
+
+        while (i < end) {
+            final int wordStart = i;
+            while (i < end && !isWhitespace(text[i])) i++;
+            words.add(new String(text, wordStart, i - wordStart));
+            while (i < end && isWhitespace(text[i])) i++;
+        }
+    }
+
+    /**
+     * @return True if c matches \s, which is [ \t\n\x0B\f\r]
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static int trimStart(StringBuilder text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') start++;
+        return start;
+    }
+
+    private static int trimEnd(StringBuilder text, int start, int end) {
+        while (start < end && text.charAt(end - 1) <= ' ') end--;
+        return end;
+    }
+
+
+    private static class Words {
+        private String[] values = new String[64];
+        private int size;
+
+        private void add(String word) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            values[size++] = word;
+        }
+    }
+}
@@ -0,0 +1,660 @@
+package com.freva.masteroppgave.preprocessing.filters;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hand written equivalent of the classifier filter chain (HTMLUnescape, parseUnicodeEmojisToAlias, normalizeForm,
+ * removeURL, removeRTTag, protectHashtag, removeEMail, removeUsername, parseEmoticons, removeFreeDigits, toLowerCase
+ * on the string, then removeInnerWordCharacters, removeNonSyntacticalText and correctWordViaCanonical on every non
+ * special class token). Produces exactly the same output, but every stage is a character scanner over the calling
+ * thread's reusable buffers instead of a regex replaceAll that allocates a new String.
+ *
+ * The stages still run one after another, as every pattern in the chain matches on the output of the previous one
+ * (f.ex. removeEMail sees the text after the hashtags have been wrapped in ||s). The library filters (HTML unescaping,
+ * emoji parsing and NFD normalization) are only called on the rare tweets they can change, that is tweets containing
+ * '&' or non-ASCII characters, which also guarantees that all the scanners work on pure ASCII text.
+ *
+ * By default words are corrected with the dictionary loaded in {@link CanonicalForm}, but a normalizer can also be
+ * given a dictionary of its own, so that a new dictionary can be put to use together with the lexicon it belongs to.
+ * Either way the dictionary is read once per text, so a text is never corrected with two different dictionaries.
+ *
+ * A degraded normalizer (see {@link #createDegraded()}) skips the library filters and the dictionary correction, the
+ * most expensive stages, for use when throughput matters more than accuracy. Non-ASCII characters are then folded with
+ * a lookup table instead: Latin letters with diacritics become their base letter, as they would after normalizeForm,
+ * and all other non-ASCII characters are dropped, so they never split a word. Emojis are dropped rather than parsed to
+ * their aliases.
+ */
+public class TweetNormalizer extends Filters {
+    private static final ThreadLocal<TextBuffer[]> textBuffers = ThreadLocal.withInitial(
+            () -> new TextBuffer[]{new TextBuffer(), new TextBuffer()});
+    private static final Stage[] STAGES = {TweetNormalizer::removeURL, TweetNormalizer::removeRTTag,
+            TweetNormalizer::protectHashtag, TweetNormalizer::removeEMail, TweetNormalizer::removeUsername,
+            TweetNormalizer::parsePositiveEmoticons, TweetNormalizer::parseNegativeEmoticons,
+            TweetNormalizer::parseConditionalLeftEmoticons, TweetNormalizer::parseConditionalRightEmoticons,
+            TweetNormalizer::removeFreeDigits};
+    private static final char FIRST_FOLDED = '\u00C0', LAST_FOLDED = '\u017F';
+    private static final char[] LATIN_FOLDS = createLatinFolds();
+
+    private final Map<String, Set<String>> dictionary;
+    private final boolean degraded;
+
+    public TweetNormalizer() {
+        this(null);
+    }
+
+    /**
+     * @param dictionary Dictionary to correct words via their canonical forms with, or null to use the dictionary
+     *                   loaded in {@link CanonicalForm}
+     */
+    public TweetNormalizer(Map<String, Set<String>> dictionary) {
+        this(dictionary, false);
+    }
+
+    private TweetNormalizer(Map<String, Set<String>> dictionary, boolean degraded) {
+        super(null, null);
+        this.dictionary = dictionary;
+        this.degraded = degraded;
+    }
+
+    /**
+     * Creates a normalizer that skips HTMLUnescape, parseUnicodeEmojisToAlias, normalizeForm and
+     * correctWordViaCanonical, and folds non-ASCII characters to ASCII with a lookup table. Its output only differs
+     * from that of a full normalizer for tweets containing '&amp;', emojis, non-Latin characters or words the dictionary
+     * would correct.
+     *
+     * @return Degraded normalizer
+     */
+    public static TweetNormalizer createDegraded() {
+        return new TweetNormalizer(Collections.emptyMap(), true);
+    }
+
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * @return Dictionary this normalizer was given, or null if it uses the dictionary loaded in {@link CanonicalForm}
+     */
+    public Map<String, Set<String>> getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public String apply(String text) {
+        final TextBuffer filtered = filter(text);
+        int start = 0, end = filtered.length;
+        while (start < end && filtered.value[start] <= ' ') start++;
+        while (start < end && filtered.value[end - 1] <= ' ') end--;
+        return new String(filtered.value, start, end - start);
+    }
+
+    @Override
+    public TokenBuffer apply(String text, TokenBuffer buffer) {
+        final TextBuffer filtered = filter(text);
+        return buffer.setTrimmed(filtered.value, 0, filtered.length);
+    }
+
+    /**
+     * @return Calling thread's text buffer holding the filtered, but not yet trimmed, text
+     */
+    private TextBuffer filter(String text) {
+        if (!degraded) {
+            if (text.indexOf('&') >= 0) {
+                text = HTMLUnescape(text);
+            }
+            if (!isASCII(text)) {
+                text = normalizeForm(parseUnicodeEmojisToAlias(text));
+            }
+        }
+
+        TextBuffer[] buffers = textBuffers.get();
+        TextBuffer src = buffers[0], dst = buffers[1];
+        src.set(text);
+        if (degraded && !isASCII(text)) {
+            foldToASCII(src);
+        }
+        for (Stage stage : STAGES) {
+            dst.clear();
+            stage.apply(src, dst);
+
+            TextBuffer swap = src;
+            src = dst;
+            dst = swap;
+        }
+
+        dst.clear();
+        filterTokens(src, dst, dictionary != null ? dictionary : CanonicalForm.getLoadedDictionary());
+        return dst;
+    }
+
+
+    /**
+     * Equivalent of {@link RegexFilters#TWITTER_URL} replaced by "": Removes everything from "http://", "https://" or
+     * "www" up to the next whitespace.
+     */
+    private static void removeURL(TextBuffer src, TextBuffer dst) {
+        final char[] s = src.value;
+        final int length = src.length;
+        for (int i = 0; i < length; ) {
+            if (isURLStart(s, i, length)) {
+                i = skipNonWhitespace(s, i, length);
+            } else {
+                dst.append(s[i++]);
+            }
+        }
+    }
+
+    private static boolean isURLStart(char[] s, int i, int length) {
+        if (startsWith(s, i, length, "http")) {
+            if (i + 4 < length && s[i + 4] == 's' && startsWith(s, i + 5, length, "://")) {
+                return i + 8 < length && !isWhitespace(s[i + 8]);
+            }
+            return startsWith(s, i + 4, length, "://") && i + 7 < length && !isWhitespace(s[i + 7]);
+        }
+        return startsWith(s, i, length, "www") && i + 3 < length && !isWhitespace(s[i + 3]);
+    }
+
+    /**
+     * Equivalent of {@link RegexFilters#TWITTER_RT_TAG} replaced by "": Removes "RT" at the start of the text and
+     * every "RT" surrounded by whitespace, together with the surrounding whitespace.
+     */
+    private static void removeRTTag(TextBuffer src, TextBuffer dst) {
+        final char[] s = src.value;
+        final int length = src.length;
+        int i = 0;
+        if (isRTTag(s, 0, length)) {
+            i = skipWhitespace(s, 2, length);
+        }
+
+        while (i < length) {
+            if (isWhitespace(s[i])) {
+                final int tagStart = skipWhitespace(s, i, length);
+                if (isRTTag(s, tagStart, length)) {
+                    i = skipWhitespace(s, tagStart + 2, length);
+                } else {
+                    dst.append(s, i, tagStart);
+                    i = tagStart;
+                }
+            } else {
+                dst.append(s[i++]);
+            }
+        }
+    }
+
+    private static boolean isRTTag(char[] s, int i, int length) {
+        return startsWith(s, i, length, "RT") && i + 2 < length && isWhitespace(s[i + 2]);
+    }
+
+    /**
+     * Equivalent of {@link Filters#protectHashtag(String)}: Wraps every hashtag starting with a letter in
+     * " ||#...|| ".
+     */
+    private static void protectHashtag(TextBuffer src, TextBuffer dst) {
+        final char[] s = src.value;
+        final int length = src.length;
+        for (int i = 0; i < length; ) {
+            if (s[i] == '#' && i + 1 < length && isLetter(s[i + 1])) {
+                final int end = skipWordCharacters(s, i + 1, length);
+                dst.append(" ||").append(s, i, end).append("|| ");
+                i = end;
+            } else {
+                dst.append(s[i++]);
+            }
+        }
+    }
+
+    /**
+     * Equivalent of {@link RegexFilters#TWITTER_EMAIL} replaced by "": Removes word characters followed by '@' and
+     * at least one non whitespace character, up to the next whitespace.
+     */
+    private static void removeEMail(TextBuffer src, TextBuffer dst) {
+        final char[] s = src.value;
+        final int length = src.length;
+        for (int i = 0; i < length; ) {
+            if (isWordCharacter(s[i])) {
+                final int at = skipWordCharacters(s, i, length);
+                if (at + 1 < length && s[at] == '@' && !isWhitespace(s[at + 1])) {
+                    i = skipNonWhitespace(s, at + 1, length);
+                } else {
+                    dst.append(s, i, at);
+                    i = at;
+                }
+            } else {
+                dst.append(s[i++]);
+            }
+        }
+    }
+
+    /**
+     * Equivalent of {@link Filters#removeUsername(String)}: Removes '@' and up to 15 word characters following it.
+     */
+    private static void removeUsername(TextBuffer src, TextBuffer dst) {
+        final char[] s = src.value;
+        final int length = src.length;
+        for (int i = 0; i < length; ) {
+            if (s[i] == '@' && i + 1 < length && isWordCharacter(s[i + 1])) {
+                i = Math.min(skipWordCharacters(s, i + 1, length), i + 16);
+            } else {
+                dst.append(s[i++]);
+            }
+        }
+    }
+
+    /**
+     * Equivalent of {@link RegexFilters#EMOTICON_POSITIVE} replaced by " ||$1|| "
+     */
+    private static void parsePositiveEmoticons(TextBuffer src, TextBuffer dst) {
+        final char[] s = src.value;
+        final int length = src.length;
+        for (int i = 0; i < length; ) {
+            int end = i;
+            if (startsWith(s, i, length, "^_^")) {
+                end = i + 3;
+            } else if (s[i] == '<' && i + 1 < length && s[i + 1] == '3') {
+                end = i + 2;
+                while (end < length && s[end] == '3') end++;
+            } else if (s[i] == ':' || s[i] == '=' || s[i] == '8' || s[i] == ';') {
+                end = matchEmoticonMouth(s, i + 1, length, ")*>}]");
+            }
+
+            i = appendEmoticon(s, i, end, dst);
+        }
+    }
+
+    /**
+     * Equivalent of {@link RegexFilters#EMOTICON_NEGATIVE} replaced by " ||$1|| "
+     */
+    private static void parseNegativeEmoticons(TextBuffer src, TextBuffer dst) {
+        final char[] s = src.value;
+        final int length = src.length;
+        for (int i = 0; i < length; ) {
+            int end = i;
+            if (s[i] == ':' || s[i] == '=' || s[i] == '8') {
+                end = matchEmoticonMouth(s, i + 1, length, "c<|@L{/([");
+            }
+
+            i = appendEmoticon(s, i, end, dst);
+        }
+    }
+
+    /**
+     * Equivalent of {@link RegexFilters#EMOTICON_CONDITIONAL_LEFT} replaced by " ||$1|| ": Conditional emoticons
+     * (f.ex. "xD" or ":p") at the start of the text or preceded by whitespace, which is replaced as well.
+     */
+    private static void parseConditionalLeftEmoticons(TextBuffer src, TextBuffer dst) {
+        final char[] s = src.value;
+        final int length = src.length;
+        int i = 0;
+        int end = matchConditionalEmoticon(s, 0, length);
+        if (end != 0) {
+            dst.append(" ||").append(s, 0, end).append("|| ");
+            i = end;
+        }
+
+        while (i < length) {
+            end = isWhitespace(s[i]) ? matchConditionalEmoticon(s, i + 1, length) : i + 1;
+            if (end != i + 1) {
+                dst.append(" ||").append(s, i + 1, end).append("|| ");
+                i = end;
+            } else {
+                dst.append(s[i++]);
+            }
+        }
+    }
+
+    /**
+     * Equivalent of {@link RegexFilters#EMOTICON_CONDITIONAL_RIGHT} replaced by " ||$1|| ": Conditional emoticons
+     * (f.ex. "xD" or ":p") at the end of the text or followed by whitespace, which is replaced as well.
+     */
+    private static void parseConditionalRightEmoticons(TextBuffer src, TextBuffer dst) {
+        final char[] s = src.value;
+        final int length = src.length;
+        for (int i = 0; i < length; ) {
+            final int emoticonEnd = matchConditionalEmoticon(s, i, length);
+            if (emoticonEnd != i) {
+                int end = -1;
+                if (isEndOfInput(s, emoticonEnd, length)) {
+                    end = emoticonEnd;
+                } else if (isWhitespace(s[emoticonEnd])) {
+                    end = emoticonEnd + 1;
+                }
+
+                if (end != -1) {
+                    dst.append(" ||").append(s, i, emoticonEnd).append("|| ");
+                    i = end;
+                    continue;
+                }
+            }
+
+            dst.append(s[i++]);
+        }
+    }
+
+    /**
+     * Equivalent of {@link RegexFilters#FREE_DIGITS} replaced by " ": Digits (optionally separated by non word
+     * characters) which are neither preceded nor followed by a word character. The surrounding non word characters are
+     * replaced as well.
+     */
+    private static void removeFreeDigits(TextBuffer src, TextBuffer dst) {
+        final char[] s = src.value;
+        final int length = src.length;
+        for (int i = 0; i < length; ) {
+            int end = isWordCharacter(s[i]) ? -1 : matchFreeDigits(s, i + 1, length);
+            if (end == -1 && i == 0) {
+                end = matchFreeDigits(s, 0, length);
+            }
+
+            if (end != -1) {
+                dst.append(' ');
+                i = end;
+            } else {
+                dst.append(s[i++]);
+            }
+        }
+    }
+
+    /**
+     * @return Index after the digits and the non word character terminating them, or -1 if the digits starting at
+     * digitsStart are followed by a word character
+     */
+    private static int matchFreeDigits(char[] s, int digitsStart, int length) {
+        if (digitsStart >= length || !isDigit(s[digitsStart])) return -1;
+
+        int end = skipDigits(s, digitsStart, length);
+        if (end < length && isWordCharacter(s[end])) return -1;
+
+        while (end < length) {
+            final int nextDigits = skipNonWordCharacters(s, end, length);
+            if (nextDigits == length || !isDigit(s[nextDigits])) break;
+
+            final int nextEnd = skipDigits(s, nextDigits, length);
+            if (nextEnd < length && isWordCharacter(s[nextEnd])) break;
+            end = nextEnd;
+        }
+
+        return end == length ? end : end + 1;
+    }
+
+
+    /**
+     * Joins the whitespace delimited tokens back together like {@link Filters#tokenChain(String, Iterable)}, lower
+     * casing the text and applying removeInnerWordCharacters, removeNonSyntacticalText and
+     * correctWordViaCanonical to non special class tokens on the way.
+     */
+    private static void filterTokens(TextBuffer src, TextBuffer dst, Map<String, Set<String>> dictionary) {
+        final char[] s = src.value;
+        final int length = src.length;
+        final boolean turkicLowerCase = isTurkicLocale(Locale.getDefault());
+        for (int i = 0; i < length; i++) {
+            s[i] = toLowerCase(s[i], turkicLowerCase);
+        }
+
+        final Map<String, Set<String>> canonicalForms = dictionary.isEmpty() ? null : dictionary;
+        int tokenStart = skipWhitespace(s, 0, length);
+        if (length == 0 || (tokenStart > 0 && tokenStart < length)) {
+            appendFilteredToken(s, 0, 0, dst, canonicalForms);
+        }
+
+        while (tokenStart < length) {
+            final int tokenEnd = skipNonWhitespace(s, tokenStart, length);
+            appendFilteredToken(s, tokenStart, tokenEnd, dst, canonicalForms);
+            tokenStart = skipWhitespace(s, tokenEnd, length);
+        }
+    }
+
+    /**
+     * @param canonicalForms Dictionary to correct the token with, or null to leave it as it is
+     */
+    private static void appendFilteredToken(char[] s, int start, int end, TextBuffer dst,
+                                            Map<String, Set<String>> canonicalForms) {
+        if (isSpecialClassToken(s, start, end)) {
+            dst.append(s, start, end).append(' ');
+            return;
+        }
+
+        final int filteredStart = dst.length;
+        for (int i = start; i < end; i++) {
+            final char c = s[i];
+            if (c == '\'' || c == '`') continue;
+            dst.append(isSyntacticalCharacter(c) ? c : ' ');
+        }
+
+        if (canonicalForms != null) {
+            final String token = new String(dst.value, filteredStart, dst.length - filteredStart);
+            final String canonical = removeRepeatingCharacters(dst.value, filteredStart, dst.length);
+            dst.length = filteredStart;
+            dst.append(CanonicalForm.correctWordViaCanonical(canonicalForms, token, canonical));
+        }
+        dst.append(' ');
+    }
+
+    private static String removeRepeatingCharacters(char[] s, int start, int end) {
+        final StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            if (i == start || s[i] != s[i - 1]) {
+                sb.append(s[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * @return Index after the optional nose and the mouth starting at noseStart, or noseStart - 1 if there is none
+     */
+    private static int matchEmoticonMouth(char[] s, int noseStart, int length, String mouths) {
+        if (noseStart + 1 < length && isNose(s[noseStart], false) && mouths.indexOf(s[noseStart + 1]) >= 0) {
+            return noseStart + 2;
+        }
+        if (noseStart < length && mouths.indexOf(s[noseStart]) >= 0) {
+            return noseStart + 1;
+        }
+        return noseStart - 1;
+    }
+
+    /**
+     * Case insensitive match of "[x=;:][Ooc^*'-]?d|[=;:]p" at start
+     *
+     * @return Index after the emoticon or start if there is none
+     */
+    private static int matchConditionalEmoticon(char[] s, int start, int length) {
+        if (start + 1 >= length) return start;
+
+        final char eyes = s[start];
+        if (eyes == 'x' || eyes == 'X' || eyes == '=' || eyes == ';' || eyes == ':') {
+            if (start + 2 < length && isNose(s[start + 1], true) && (s[start + 2] == 'd' || s[start + 2] == 'D')) {
+                return start + 3;
+            }
+            if (s[start + 1] == 'd' || s[start + 1] == 'D') {
+                return start + 2;
+            }
+            if (eyes != 'x' && eyes != 'X' && (s[start + 1] == 'p' || s[start + 1] == 'P')) {
+                return start + 2;
+            }
+        }
+        return start;
+    }
+
+    private static int appendEmoticon(char[] s, int start, int end, TextBuffer dst) {
+        if (end <= start) {
+            dst.append(s[start]);
+            return start + 1;
+        }
+
+        dst.append(" ||").append(s, start, end).append("|| ");
+        return end;
+    }
+
+
+    /**
+     * Cheap stand-in for normalizeForm: Replaces the Latin letters with diacritics in U+00C0 to U+017F by their base
+     * letter and removes all other non-ASCII characters, in place.
+     */
+    private static void foldToASCII(TextBuffer buffer) {
+        final char[] s = buffer.value;
+        int length = 0;
+        for (int i = 0; i < buffer.length; i++) {
+            final char c = s[i];
+            if (c <= 127) {
+                s[length++] = c;
+            } else if (c >= FIRST_FOLDED && c <= LAST_FOLDED && LATIN_FOLDS[c - FIRST_FOLDED] != 0) {
+                s[length++] = LATIN_FOLDS[c - FIRST_FOLDED];
+            }
+        }
+        buffer.length = length;
+    }
+
+    /**
+     * @return For every char from FIRST_FOLDED to LAST_FOLDED, the ASCII letter its NFD decomposition starts with, or 0
+     * if it has none
+     */
+    private static char[] createLatinFolds() {
+        final char[] folds = new char[LAST_FOLDED - FIRST_FOLDED + 1];
+        for (char c = FIRST_FOLDED; c <= LAST_FOLDED; c++) {
+            final char base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0);
+            folds[c - FIRST_FOLDED] = base <= 127 ? base : 0;
+        }
+        return folds;
+    }
+
+    /**
+     * Same as regex "$" without MULTILINE flag: At the end of input or before a line terminator ending the input
+     */
+    private static boolean isEndOfInput(char[] s, int i, int length) {
+        if (i == length) return true;
+        if (i == length - 1) return s[i] == '\r' || (s[i] == '\n' && (i == 0 || s[i - 1] != '\r'));
+        return i == length - 2 && s[i] == '\r' && s[i + 1] == '\n';
+    }
+
+    private static boolean isASCII(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 127) return false;
+        }
+        return true;
+    }
+
+    private static boolean isTurkicLocale(Locale locale) {
+        final String language = locale.getLanguage();
+        return language.equals("tr") || language.equals("az");
+    }
+
+    private static char toLowerCase(char c, boolean turkic) {
+        if (c >= 'A' && c <= 'Z') {
+            return turkic && c == 'I' ? '\u0131' : (char) (c + ('a' - 'A'));
+        }
+        return c;
+    }
+
+    private static boolean isSpecialClassToken(char[] s, int start, int end) {
+        return end - start >= 2 && s[start] == '|' && s[start + 1] == '|' && s[end - 2] == '|' && s[end - 1] == '|';
+    }
+
+    private static boolean isSyntacticalCharacter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == ' ' || c == '?' || c == '!' || c == '.' || c == ',';
+    }
+
+    private static boolean isNose(char c, boolean caseInsensitive) {
+        return c == 'O' || c == 'o' || c == 'c' || c == '^' || c == '*' || c == '\'' || c == '-' || (caseInsensitive && c == 'C');
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+
+    private static boolean startsWith(char[] s, int start, int length, String prefix) {
+        if (start + prefix.length() > length) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (s[start + i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(char[] s, int i, int length) {
+        while (i < length && isWhitespace(s[i])) i++;
+        return i;
+    }
+
+    private static int skipNonWhitespace(char[] s, int i, int length) {
+        while (i < length && !isWhitespace(s[i])) i++;
+        return i;
+    }
+
+    private static int skipWordCharacters(char[] s, int i, int length) {
+        while (i < length && isWordCharacter(s[i])) i++;
+        return i;
+    }
+
+    private static int skipNonWordCharacters(char[] s, int i, int length) {
+        while (i < length && !isWordCharacter(s[i])) i++;
+        return i;
+    }
+
+    private static int skipDigits(char[] s, int i, int length) {
+        while (i < length && isDigit(s[i])) i++;
+        return i;
+    }
+
+
+    private interface Stage {
+        void apply(TextBuffer src, TextBuffer dst);
+    }
+
+    private static class TextBuffer {
+        private char[] value = new char[256];
+        private int length;
+
+        private void clear() {
+            length = 0;
+        }
+
+        private void set(String text) {
+            length = 0;
+            ensureCapacity(text.length());
+            text.getChars(0, text.length(), value, 0);
+            length = text.length();
+        }
+
+        private TextBuffer append(char c) {
+            ensureCapacity(length + 1);
+            value[length++] = c;
+            return this;
+        }
+
+        private TextBuffer append(char[] s, int start, int end) {
+            ensureCapacity(length + end - start);
+            System.arraycopy(s, start, value, length, end - start);
+            length += end - start;
+            return this;
+        }
+
+        private TextBuffer append(String s) {
+            ensureCapacity(length + s.length());
+            s.getChars(0, s.length(), value, length);
+            length += s.length();
+            return this;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > value.length) {
+                value = Arrays.copyOf(value, Math.max(capacity, 2 * value.length));
+            }
+        }
+    }
+}
@@ -2,7 +2,9 @@ package com.freva.masteroppgave.preprocessing.preprocessors;
 
 import com.freva.masteroppgave.preprocessing.filters.Filters;
 import com.freva.masteroppgave.preprocessing.filters.RegexFilters;
+import com.freva.masteroppgave.preprocessing.filters.TokenBuffer;
 import com.freva.masteroppgave.classifier.ClassifierOptions;
+import com.freva.masteroppgave.classifier.TokenRoles;
 import com.freva.masteroppgave.utils.progressbar.Progressable;
 import com.freva.masteroppgave.utils.reader.LineReader;
 import com.freva.masteroppgave.utils.tools.Parallel;
@@ -21,7 +23,9 @@ public class TweetNGramsPMI implements Progressable {
     private NGramTree nGramTree;
 
     /**
-     * Finds all frequent (and meaningful) n-grams in a file, treating each new line as a new document.
+     * Finds all frequent (and meaningful) n-grams in a file, treating each new line as a new document. Every thread
+     * counts into an n-gram tree of its own, which is pruned of infrequent n-grams by the thread that reads every
+     * 200000th line, and the trees are merged once the file is read.
      *
      * @param input        LineReader initialized on file with documents to generate n-grams for
      * @param n            Maximum n-gram length
@@ -35,28 +39,50 @@ public class TweetNGramsPMI implements Progressable {
         tweetReader = input;
         nGramTree = new NGramTree();
 
-        Parallel.For(tweetReader, tweet -> {
-            synchronized (lineCounter) {
-                if (lineCounter.incrementAndGet() % 200000 == 0) {
-                    nGramTree.pruneInfrequent((int) Math.ceil(minFrequency * lineCounter.intValue() / 2));
-                }
+        List<CountingState> states = Parallel.For(tweetReader.spliterator(), CountingState::new, (state, tweet) -> {
+            state.numLines++;
+            if (lineCounter.incrementAndGet() % 200000 == 0) {
+                state.nGramTree.pruneInfrequent((int) Math.ceil(minFrequency * state.numLines / 2));
             }
 
-            tweet = filters.apply(tweet);
-            for (String sentence : RegexFilters.SENTENCE_END_PUNCTUATION.split(tweet)) {
-                String[] tokens = RegexFilters.WHITESPACE.split(sentence.trim());
+            TokenBuffer tokenBuffer = filters.apply(tweet, state.buffer);
+            for (int sentence = 0; sentence < tokenBuffer.getNumSentences(); sentence++) {
+                String[] tokens = getTrimmedSentence(tokenBuffer, sentence);
                 if (tokens.length == 1) continue;
 
                 for (int i = 0; i < tokens.length; i++) {
-                    nGramTree.incrementNGram(Arrays.copyOfRange(tokens, i, Math.min(i + n, tokens.length)));
+                    state.nGramTree.incrementNGram(Arrays.copyOfRange(tokens, i, Math.min(i + n, tokens.length)));
                 }
             }
         });
 
+        for (CountingState state : states) {
+            nGramTree.root.merge(state.nGramTree.root);
+        }
+
         return nGramTree.getNGrams((int) (minFrequency * lineCounter.intValue()), minPMI);
     }
 
 
+    /**
+     * Returns the words of a sentence as if the sentence was trimmed before being split, which only differs from the
+     * sentence's words in the leading empty word, unless the sentence starts or ends with control characters.
+     */
+    private static String[] getTrimmedSentence(TokenBuffer tokenBuffer, int sentence) {
+        final String[] words = tokenBuffer.getWords();
+        int start = tokenBuffer.getSentenceStart(sentence);
+        final int end = tokenBuffer.getSentenceEnd(sentence);
+        if (words[start].isEmpty() && end - start > 1) start++;
+
+        final String first = words[start], last = words[end - 1];
+        if ((!first.isEmpty() && first.charAt(0) <= ' ') || (!last.isEmpty() && last.charAt(last.length() - 1) <= ' ')) {
+            String joined = String.join(" ", Arrays.asList(words).subList(start, end));
+            return RegexFilters.WHITESPACE.split(joined.trim());
+        }
+        return Arrays.copyOfRange(words, start, end);
+    }
+
+
     @Override
     public double getProgress() {
         return tweetReader != null ? tweetReader.getProgress() : 0;
@@ -66,7 +92,7 @@ public class TweetNGramsPMI implements Progressable {
     private class NGramTree {
         private Node root = new Node("");
 
-        private synchronized void incrementNGram(String[] nGram) {
+        private void incrementNGram(String[] nGram) {
             Node current = root;
             current.numOccurrences++;
 
@@ -103,13 +129,12 @@ public class TweetNGramsPMI implements Progressable {
                 child.addFrequentPhrases(allNGrams, limit, child.phrase);
             }
 
+            TokenRoles roles = new TokenRoles(null, ClassifierOptions.compileOptions());
             List<String> filteredNGrams = new ArrayList<>();
             for (Map.Entry<String, Double> next : allNGrams.entrySet()) {
                 String[] nGramTokens = RegexFilters.WHITESPACE.split(next.getKey());
 
-                if (next.getValue() >= inclusionThreshold &&
-                        !ClassifierOptions.containsIntensifier(nGramTokens) &&
-                        !ClassifierOptions.isStopWord(nGramTokens[nGramTokens.length - 1])) {
+                if (next.getValue() >= inclusionThreshold && !roles.containsIllegalWord(nGramTokens)) {
                     filteredNGrams.add(next.getKey());
                 }
             }
@@ -146,6 +171,20 @@ public class TweetNGramsPMI implements Progressable {
             return logScore;
         }
 
+        /**
+         * Adds the occurrences counted in other, a node for the same phrase in another tree, to this node and its
+         * children. Children only found in other are moved over.
+         */
+        private void merge(Node other) {
+            numOccurrences += other.numOccurrences;
+            for (Map.Entry<String, Node> child : other.children.entrySet()) {
+                final Node existing = children.putIfAbsent(child.getKey(), child.getValue());
+                if (existing != null) {
+                    existing.merge(child.getValue());
+                }
+            }
+        }
+
         private void pruneInfrequent(int limit) {
             Iterator<Map.Entry<String, Node>> iterator = children.entrySet().iterator();
             while (iterator.hasNext()) {
@@ -175,4 +214,11 @@ public class TweetNGramsPMI implements Progressable {
                     });
         }
     }
-}
\ No newline at end of file
+
+
+    private class CountingState {
+        private final TokenBuffer buffer = new TokenBuffer();
+        private final NGramTree nGramTree = new NGramTree();
+        private int numLines;
+    }
+}
@@ -0,0 +1,94 @@
+package com.freva.masteroppgave.service;
+
+import com.freva.masteroppgave.service.BinaryProtocol.Response;
+import com.freva.masteroppgave.utils.reader.DataSetReader.Classification;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Client of {@link BinaryClassificationServer}. Requests are buffered until {@link #flush()}, so any number of them can
+ * be pipelined on the connection. One thread may send requests while another receives responses, but neither of the
+ * two may be used by several threads at once.
+ */
+public class BinaryClassificationClient implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+
+    public BinaryClassificationClient(InetSocketAddress address) throws IOException {
+        this.socket = new Socket(address.getAddress(), address.getPort());
+        this.socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+    }
+
+    /**
+     * Buffers request to classify tweet
+     *
+     * @param requestId Id the response will be tagged with
+     * @param tweet     Tweet to classify
+     * @throws IOException If the tweet is longer than {@link BinaryProtocol#MAX_TWEET_BYTES} or the request could not
+     *                     be sent
+     */
+    public void send(long requestId, String tweet) throws IOException {
+        final byte[] bytes = tweet.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > BinaryProtocol.MAX_TWEET_BYTES) {
+            throw new IOException("Tweet is " + bytes.length + " bytes, maximum is " + BinaryProtocol.MAX_TWEET_BYTES);
+        }
+
+        out.writeInt(bytes.length);
+        out.writeLong(requestId);
+        out.write(bytes);
+    }
+
+    /**
+     * Sends all buffered requests
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Blocks until the next response arrives
+     *
+     * @return The response
+     */
+    public Response receive() throws IOException {
+        final long requestId = in.readLong();
+        final double sentimentValue = in.readDouble();
+        final Classification classification = Classification.values()[in.readByte()];
+        final byte flags = in.readByte();
+        return new Response(requestId, sentimentValue, classification, flags);
+    }
+
+    /**
+     * Pipelines all the tweets on the connection and waits for their responses. The request ids used are the indices
+     * of the tweets.
+     *
+     * @param tweets Tweets to classify
+     * @return Sentiment values, in the same order as tweets, NaN for tweets that could not be classified
+     */
+    public double[] calculateSentiments(List<String> tweets) throws IOException {
+        for (int i = 0; i < tweets.size(); i++) {
+            send(i, tweets.get(i));
+        }
+        flush();
+
+        double[] sentimentValues = new double[tweets.size()];
+        for (int i = 0; i < tweets.size(); i++) {
+            Response response = receive();
+            sentimentValues[(int) response.getRequestId()] = response.getSentimentValue();
+        }
+        return sentimentValues;
+    }
+
+    public void close() throws IOException {
+        socket.close();
+    }
+}
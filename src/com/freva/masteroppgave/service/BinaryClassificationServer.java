@@ -0,0 +1,404 @@
+package com.freva.masteroppgave.service;
+
+import com.freva.masteroppgave.classifier.Classifier;
+import com.freva.masteroppgave.classifier.LoadSheddingClassifier;
+import com.freva.masteroppgave.classifier.ReloadableClassifier;
+import com.freva.masteroppgave.classifier.ResultCache;
+import com.freva.masteroppgave.utils.reader.DataSetReader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Classification server speaking {@link BinaryProtocol} over persistent TCP connections, for local callers to whom
+ * HTTP framing costs more than the classification itself. A single selector thread does all the network I/O: it
+ * reads whatever pipelined requests have arrived on all connections, and hands them to the workers as one batch,
+ * split into chunks of {@link #CHUNK_SIZE} tweets. The workers classify their chunk and append the responses to
+ * their connections' output buffers, which the selector thread then writes. A request whose classification fails is
+ * answered with {@link BinaryProtocol#FLAG_ERROR} set, and does not affect the rest of its chunk.
+ *
+ * The number of tweets read but not yet classified is bounded: once it passes the limit the server stops reading from
+ * the connections, leaving the requests in the socket buffers so TCP flow control pushes back on the callers, and
+ * continues once half of them are done. Classification goes through a {@link LoadSheddingClassifier} that degrades
+ * while more than half of the limit is pending. Likewise, the server stops reading from a connection while more than
+ * {@link #MAX_UNWRITTEN_BYTES} of responses to it are owed, counting both the responses waiting to be written and the
+ * requests read but not yet answered, so a caller that sends requests faster than it reads the responses cannot make
+ * its output buffer grow without bound.
+ */
+public class BinaryClassificationServer implements Closeable {
+    private static final int CHUNK_SIZE = 256;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_UNWRITTEN_BYTES = 1 << 20;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers;
+    private final LoadSheddingClassifier classifier;
+    private final int maxPending;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Queue<Connection> writable = new ConcurrentLinkedQueue<>();
+    private boolean readingPaused;
+    private volatile boolean running;
+    private Thread selectorThread;
+
+    private final LongAdder tweets = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+
+    /**
+     * @param classifier  Source of the classifier to use, looked up for every tweet, f.ex.
+     *                    {@link ReloadableClassifier#getClassifier()}
+     * @param address     Address to listen on, port 0 picks any free port
+     * @param concurrency Number of worker threads
+     * @param maxPending  Number of tweets read but not yet classified above which the server stops reading
+     * @throws IOException If the server could not bind to address
+     */
+    public BinaryClassificationServer(Supplier<Classifier> classifier, InetSocketAddress address, int concurrency,
+                                      int maxPending) throws IOException {
+        this.classifier = new LoadSheddingClassifier(classifier, pending::get, maxPending / 2, Long.MAX_VALUE);
+        this.maxPending = maxPending;
+        this.workers = Executors.newFixedThreadPool(concurrency);
+
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(address);
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public synchronized void start() {
+        if (running) return;
+
+        running = true;
+        selectorThread = new Thread(this::run, "binary-classification-server");
+        selectorThread.start();
+    }
+
+    /**
+     * Stops the server and closes all connections. Responses not yet written are dropped.
+     */
+    public synchronized void close() throws IOException {
+        if (!running) return;
+
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * @return Address the server listens on
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    public LoadSheddingClassifier getClassifier() {
+        return classifier;
+    }
+
+
+    public long getTweets() {
+        return tweets.sum();
+    }
+
+    /**
+     * @return Number of batches handed to the workers, each holding the requests read in one selector round
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    public String toString() {
+        return "BinaryClassificationServer{connections=" + getConnections() + ", tweets=" + getTweets() +
+                ", batches=" + getBatches() + ", pending=" + pending.get() + ", " + classifier + "}";
+    }
+
+
+    private void run() {
+        final List<Request> batch = new ArrayList<>();
+        while (running) {
+            try {
+                selector.select();
+                for (Connection connection; (connection = writable.poll()) != null; ) {
+                    connection.flush();
+                }
+                if (readingPaused && pending.get() <= maxPending / 2) {
+                    setReading(true);
+                }
+
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    final Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) connection.read(batch);
+                        if (key.isValid() && key.isWritable()) connection.flush();
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+
+                if (!batch.isEmpty()) {
+                    dispatch(batch);
+                    batch.clear();
+                }
+                if (!readingPaused && pending.get() > maxPending) {
+                    setReading(false);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        final Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, readingPaused ? 0 : SelectionKey.OP_READ, connection);
+        connections.increment();
+    }
+
+    private void setReading(boolean reading) {
+        readingPaused = !reading;
+        for (SelectionKey key : selector.keys()) {
+            if (!key.isValid() || !(key.attachment() instanceof Connection)) continue;
+            ((Connection) key.attachment()).updateInterest();
+        }
+    }
+
+    private void dispatch(List<Request> batch) {
+        batches.increment();
+        tweets.add(batch.size());
+        pending.addAndGet(batch.size());
+        for (int start = 0; start < batch.size(); start += CHUNK_SIZE) {
+            final Request[] chunk = batch.subList(start, Math.min(batch.size(), start + CHUNK_SIZE))
+                    .toArray(new Request[0]);
+            workers.execute(() -> classifyChunk(chunk));
+        }
+    }
+
+    private void classifyChunk(Request[] chunk) {
+        try {
+            for (Request request : chunk) {
+                try {
+                    request.connection.respond(request.id, classifier.classify(request.tweet));
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    request.connection.respondError(request.id);
+                }
+            }
+        } finally {
+            for (Request request : chunk) {
+                request.connection.queueFlush();
+            }
+            pending.addAndGet(-chunk.length);
+            selector.wakeup();
+        }
+    }
+
+
+    private class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(BinaryProtocol.REQUEST_HEADER_SIZE + BinaryProtocol.MAX_TWEET_BYTES);
+        private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        private boolean flushQueued;
+        private boolean inputClosed;
+        private int unanswered;
+        private SelectionKey key;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Reads all complete requests available on the channel into batch, and stops reading from the connection if
+         * it is backlogged. Once the caller has shut down its output, the connection is kept open until the responses
+         * to the requests already read have been written.
+         */
+        private void read(List<Request> batch) throws IOException {
+            if (channel.read(in) < 0) {
+                synchronized (this) {
+                    inputClosed = true;
+                    updateInterest();
+                }
+                return;
+            }
+
+            in.flip();
+            int numRead = 0;
+            while (in.remaining() >= BinaryProtocol.REQUEST_HEADER_SIZE) {
+                final int length = in.getInt(in.position());
+                if (length < 0 || length > BinaryProtocol.MAX_TWEET_BYTES) {
+                    close();
+                    return;
+                }
+                if (in.remaining() < BinaryProtocol.REQUEST_HEADER_SIZE + length) break;
+
+                final long id = in.getLong(in.position() + 4);
+                final String tweet = new String(in.array(), in.position() + BinaryProtocol.REQUEST_HEADER_SIZE,
+                        length, StandardCharsets.UTF_8);
+                in.position(in.position() + BinaryProtocol.REQUEST_HEADER_SIZE + length);
+                batch.add(new Request(this, id, tweet));
+                numRead++;
+            }
+            in.compact();
+
+            synchronized (this) {
+                unanswered += numRead;
+                updateInterest();
+            }
+        }
+
+        /**
+         * Called by workers to append a response to the output buffer
+         */
+        private void respond(long id, LoadSheddingClassifier.Result result) {
+            respond(id, result.getSentimentValue(), result.getClassification(),
+                    result.getMode() == LoadSheddingClassifier.Mode.DEGRADED ? BinaryProtocol.FLAG_DEGRADED : 0);
+        }
+
+        /**
+         * Called by workers to answer a request whose classification failed
+         */
+        private void respondError(long id) {
+            respond(id, Double.NaN, DataSetReader.Classification.NEUTRAL, BinaryProtocol.FLAG_ERROR);
+        }
+
+        private synchronized void respond(long id, double value, DataSetReader.Classification classification,
+                                          byte flags) {
+            unanswered--;
+            if (out.remaining() < BinaryProtocol.RESPONSE_SIZE) {
+                ByteBuffer larger = ByteBuffer.allocate(2 * out.capacity());
+                out.flip();
+                out = larger.put(out);
+            }
+            BinaryProtocol.putResponse(out, id, value, classification, flags);
+        }
+
+        /**
+         * Called by workers to have the selector thread write the output buffer
+         */
+        private synchronized void queueFlush() {
+            if (!flushQueued) {
+                flushQueued = true;
+                writable.add(this);
+            }
+        }
+
+        /**
+         * Called by the selector thread to write as much of the output buffer as the channel takes, and resume reading
+         * from the connection if it is no longer backlogged
+         */
+        private synchronized void flush() {
+            flushQueued = false;
+            if (!channel.isOpen()) return;
+
+            out.flip();
+            try {
+                channel.write(out);
+            } catch (IOException e) {
+                close();
+                return;
+            } finally {
+                out.compact();
+            }
+
+            updateInterest();
+        }
+
+        /**
+         * Called by the selector thread to read while neither the server nor this connection is backlogged, and write
+         * while there are unwritten responses. Closes the connection once the caller has shut down its output and
+         * nothing more is owed to it.
+         */
+        private synchronized void updateInterest() {
+            if (!key.isValid()) return;
+
+            final long owed = out.position() + (long) unanswered * BinaryProtocol.RESPONSE_SIZE;
+            if (inputClosed && owed == 0) {
+                close();
+                return;
+            }
+
+            final int read = inputClosed || readingPaused || owed > MAX_UNWRITTEN_BYTES ? 0 : SelectionKey.OP_READ;
+            key.interestOps(read | (out.position() > 0 ? SelectionKey.OP_WRITE : 0));
+        }
+
+        private void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static class Request {
+        private final Connection connection;
+        private final long id;
+        private final String tweet;
+
+        private Request(Connection connection, long id, String tweet) {
+            this.connection = connection;
+            this.id = id;
+            this.tweet = tweet;
+        }
+    }
+
+
+    /**
+     * Serves the classifier over the binary protocol until the process is killed.
+     *
+     * @param args Lexicon file, options file, dictionary file, port and optionally number of workers
+     */
+    public static void main(String[] args) throws IOException {
+        final int concurrency = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        ReloadableClassifier classifier = new ReloadableClassifier(new File(args[0]), new File(args[1]),
+                new File(args[2]), 1 << 16, ResultCache.Key.RAW_TWEET);
+        classifier.watch(2000);
+
+        BinaryClassificationServer server = new BinaryClassificationServer(classifier::getClassifier,
+                new InetSocketAddress(Integer.parseInt(args[3])), concurrency, 1 << 16);
+        server.start();
+        System.err.println("Listening on " + server.getAddress());
+    }
+}
@@ -0,0 +1,147 @@
+package com.freva.masteroppgave.service;
+
+import com.freva.masteroppgave.classifier.ReloadableClassifier;
+import com.freva.masteroppgave.classifier.ResultCache;
+import com.freva.masteroppgave.service.BinaryProtocol.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of {@link BinaryClassificationServer} over loopback. Starts a server in this process and a number of
+ * client connections, each pipelining tweets from a corpus with a fixed window of requests in flight, and reports the
+ * throughput and response latencies once the given time is up.
+ */
+public class BinaryLoadTest {
+    private static final long LAST_REQUEST_ID = -1;
+
+    private final List<String> tweets;
+    private final Map<Long, Long> sendTimes = new ConcurrentHashMap<>();
+    private final Semaphore inFlight;
+    private final AtomicLong sent = new AtomicLong();
+    private long[] latencies = new long[1 << 16];
+    private int numLatencies;
+    private volatile boolean stopped;
+
+    private BinaryLoadTest(List<String> tweets, int window) {
+        this.tweets = tweets;
+        this.inFlight = new Semaphore(window);
+    }
+
+    private void send(BinaryClassificationClient client) {
+        try {
+            for (long id = 0; !stopped; id++) {
+                if (!inFlight.tryAcquire()) {
+                    client.flush();
+                    inFlight.acquire();
+                }
+                sendTimes.put(id, System.nanoTime());
+                sent.incrementAndGet();
+                client.send(id, tweets.get((int) (id % tweets.size())));
+            }
+            client.send(LAST_REQUEST_ID, "");
+            client.flush();
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void receive(BinaryClassificationClient client) {
+        try {
+            // Responses may arrive out of order, so the response to the last request does not mean all are received,
+            // and send times are kept by request id until the response arrives
+            boolean lastReceived = false;
+            for (long received = 0; !lastReceived || received < sent.get(); ) {
+                final Response response = client.receive();
+                if (response.getRequestId() == LAST_REQUEST_ID) {
+                    lastReceived = true;
+                    continue;
+                }
+
+                addLatency(System.nanoTime() - sendTimes.remove(response.getRequestId()));
+                inFlight.release();
+                received++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void addLatency(long latency) {
+        if (numLatencies == latencies.length) {
+            latencies = Arrays.copyOf(latencies, 2 * numLatencies);
+        }
+        latencies[numLatencies++] = latency;
+    }
+
+
+    /**
+     * @param args Lexicon file, options file, dictionary file, corpus file with one tweet per line, and optionally
+     *             number of connections, seconds to run and requests in flight per connection
+     */
+    public static void main(String[] args) throws Exception {
+        final int numConnections = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        final int seconds = args.length > 5 ? Integer.parseInt(args[5]) : 10;
+        final int window = args.length > 6 ? Integer.parseInt(args[6]) : 1024;
+        final int concurrency = Runtime.getRuntime().availableProcessors();
+
+        ReloadableClassifier classifier = new ReloadableClassifier(new File(args[0]), new File(args[1]),
+                new File(args[2]), 1 << 16, ResultCache.Key.RAW_TWEET);
+        List<String> tweets = Files.readAllLines(new File(args[3]).toPath(), StandardCharsets.UTF_8);
+
+        try (BinaryClassificationServer server = new BinaryClassificationServer(classifier::getClassifier,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), concurrency, 1 << 16)) {
+            server.start();
+
+            List<BinaryLoadTest> testers = new ArrayList<>();
+            List<BinaryClassificationClient> clients = new ArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < numConnections; i++) {
+                BinaryLoadTest tester = new BinaryLoadTest(tweets, window);
+                BinaryClassificationClient client = new BinaryClassificationClient(server.getAddress());
+                testers.add(tester);
+                clients.add(client);
+                threads.add(new Thread(() -> tester.send(client)));
+                threads.add(new Thread(() -> tester.receive(client)));
+            }
+
+            final long start = System.nanoTime();
+            threads.forEach(Thread::start);
+            Thread.sleep(seconds * 1000L);
+            testers.forEach(tester -> tester.stopped = true);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            final double elapsed = (System.nanoTime() - start) / 1e9;
+            for (BinaryClassificationClient client : clients) {
+                client.close();
+            }
+
+            long[] latencies = testers.stream()
+                    .flatMapToLong(tester -> Arrays.stream(tester.latencies, 0, tester.numLatencies)).sorted().toArray();
+            System.out.println(String.format("%d tweets in %.1fs over %d connections: %.0f tweets/s, %.0f tweets/min",
+                    latencies.length, elapsed, numConnections, latencies.length / elapsed, 60 * latencies.length / elapsed));
+            if (latencies.length > 0) {
+                System.out.println(String.format("Latency p50 %.2fms, p99 %.2fms, max %.2fms",
+                        percentile(latencies, 0.5) / 1e6, percentile(latencies, 0.99) / 1e6,
+                        latencies[latencies.length - 1] / 1e6));
+            }
+            System.out.println(server);
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) (percentile * sorted.length))];
+    }
+}
@@ -0,0 +1,70 @@
+package com.freva.masteroppgave.service;
+
+import com.freva.masteroppgave.utils.reader.DataSetReader.Classification;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frames of the binary classification protocol, all numbers big endian. A request is the length of the tweet in bytes
+ * (int), a request id chosen by the client (long) and the tweet encoded as UTF-8. A response is the id of the request
+ * (long), the sentiment value (double), the {@link Classification#ordinal()} of the class (byte) and flags (byte).
+ * Requests may be pipelined on a connection without waiting for responses, and responses are not necessarily sent in
+ * the order of the requests.
+ */
+public class BinaryProtocol {
+    public static final int REQUEST_HEADER_SIZE = 12;
+    public static final int RESPONSE_SIZE = 18;
+    public static final int MAX_TWEET_BYTES = 1 << 16;
+
+    /**
+     * Response flag set if the tweet was classified in degraded mode, see
+     * {@link com.freva.masteroppgave.classifier.LoadSheddingClassifier}
+     */
+    public static final byte FLAG_DEGRADED = 1;
+
+    /**
+     * Response flag set if the tweet could not be classified, in which case the sentiment value is NaN and the
+     * classification is to be ignored
+     */
+    public static final byte FLAG_ERROR = 2;
+
+    static void putResponse(ByteBuffer buffer, long requestId, double sentimentValue, Classification classification,
+                            byte flags) {
+        buffer.putLong(requestId).putDouble(sentimentValue).put((byte) classification.ordinal()).put(flags);
+    }
+
+
+    public static class Response {
+        private final long requestId;
+        private final double sentimentValue;
+        private final Classification classification;
+        private final byte flags;
+
+        Response(long requestId, double sentimentValue, Classification classification, byte flags) {
+            this.requestId = requestId;
+            this.sentimentValue = sentimentValue;
+            this.classification = classification;
+            this.flags = flags;
+        }
+
+        public long getRequestId() {
+            return requestId;
+        }
+
+        public double getSentimentValue() {
+            return sentimentValue;
+        }
+
+        public Classification getClassification() {
+            return classification;
+        }
+
+        public boolean isDegraded() {
+            return (flags & FLAG_DEGRADED) != 0;
+        }
+
+        public boolean isError() {
+            return (flags & FLAG_ERROR) != 0;
+        }
+    }
+}
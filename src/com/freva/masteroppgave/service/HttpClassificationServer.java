@@ -0,0 +1,260 @@
+package com.freva.masteroppgave.service;
+
+import com.freva.masteroppgave.classifier.Classifier;
+import com.freva.masteroppgave.classifier.LoadSheddingClassifier;
+import com.freva.masteroppgave.classifier.ReloadableClassifier;
+import com.freva.masteroppgave.classifier.ResultCache;
+import com.freva.masteroppgave.utils.JSONUtils;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static java.net.HttpURLConnection.*;
+
+/**
+ * HTTP classification service built on the JDK's own HTTP server. Two endpoints are served, both taking POST requests:
+ * /classify, whose body is a single tweet as plain text, and /batch, whose body is a JSON array of tweets. The
+ * response is a JSON object, or an array of objects in the order of the tweets, with the sentiment value, class and
+ * the mode of the {@link LoadSheddingClassifier} that produced them.
+ *
+ * Requests are read by the HTTP server's threads and then queued for a fixed pool of classification workers. When
+ * the queue is more than half full the classifier switches to its degraded mode, and when it is full the request is
+ * rejected with 503 right away instead of waiting, so callers can back off or retry elsewhere. Request bodies larger
+ * than the size limit are rejected with 413.
+ */
+public class HttpClassificationServer {
+    private static final TypeToken<List<String>> TWEET_LIST = new TypeToken<List<String>>() {};
+
+    private final HttpServer server;
+    private final ExecutorService connectionThreads;
+    private final ThreadPoolExecutor workers;
+    private final LoadSheddingClassifier classifier;
+    private final int maxRequestBytes;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder tweets = new LongAdder();
+
+    /**
+     * @param classifier      Source of the classifier to use, looked up for every tweet, f.ex.
+     *                        {@link ReloadableClassifier#getClassifier()}
+     * @param address         Address to listen on, port 0 picks any free port
+     * @param concurrency     Number of tweets classified at the same time
+     * @param queueCapacity   Number of requests that may wait for a worker before new ones are rejected
+     * @param maxRequestBytes Maximum size of a request body
+     * @throws IOException If the server could not bind to address
+     */
+    public HttpClassificationServer(Supplier<Classifier> classifier, InetSocketAddress address, int concurrency,
+                                    int queueCapacity, int maxRequestBytes) throws IOException {
+        this.workers = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.AbortPolicy());
+        this.classifier = new LoadSheddingClassifier(classifier, () -> workers.getQueue().size(),
+                queueCapacity / 2, Long.MAX_VALUE);
+        this.maxRequestBytes = maxRequestBytes;
+
+        this.connectionThreads = Executors.newFixedThreadPool(concurrency);
+        this.server = HttpServer.create(address, queueCapacity);
+        this.server.setExecutor(connectionThreads);
+        this.server.createContext("/classify", exchange -> handle(exchange, false));
+        this.server.createContext("/batch", exchange -> handle(exchange, true));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, and waits up to delay seconds for the ones being handled to finish.
+     *
+     * @param delay Maximum seconds to wait
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        workers.shutdown();
+        connectionThreads.shutdown();
+    }
+
+    /**
+     * @return Address the server listens on
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public LoadSheddingClassifier getClassifier() {
+        return classifier;
+    }
+
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return Number of requests rejected because the work queue was full
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getTweets() {
+        return tweets.sum();
+    }
+
+    public String toString() {
+        return "HttpClassificationServer{requests=" + getRequests() + ", rejected=" + getRejected() + ", tweets=" +
+                getTweets() + ", queued=" + workers.getQueue().size() + ", " + classifier + "}";
+    }
+
+
+    private void handle(HttpExchange exchange, boolean batch) throws IOException {
+        requests.increment();
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, HTTP_BAD_METHOD, "Only POST is supported");
+                return;
+            }
+
+            final long contentLength;
+            try {
+                contentLength = getContentLength(exchange);
+            } catch (NumberFormatException e) {
+                respond(exchange, HTTP_BAD_REQUEST, "Invalid Content-Length");
+                return;
+            }
+
+            final String body = contentLength > maxRequestBytes ? null : readBody(exchange);
+            if (body == null) {
+                respond(exchange, HTTP_ENTITY_TOO_LARGE, "Request body exceeds " + maxRequestBytes + " bytes");
+                return;
+            }
+
+            final List<String> batchTweets;
+            try {
+                batchTweets = batch ? JSONUtils.fromJSON(body, TWEET_LIST) : null;
+            } catch (JsonParseException e) {
+                respond(exchange, HTTP_BAD_REQUEST, "Body must be a JSON array of tweets");
+                return;
+            }
+            if (batch && (batchTweets == null || batchTweets.contains(null))) {
+                respond(exchange, HTTP_BAD_REQUEST, "Body must be a JSON array of tweets");
+                return;
+            }
+
+            workers.execute(() -> {
+                try {
+                    final String result;
+                    try {
+                        result = batch ? classifyBatch(batchTweets) : classifySingle(body);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                        respond(exchange, HTTP_INTERNAL_ERROR, "Classification failed");
+                        return;
+                    }
+                    respond(exchange, HTTP_OK, result);
+                } catch (IOException | RuntimeException e) {
+                    exchange.close();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, HTTP_UNAVAILABLE, "Work queue is full");
+        }
+    }
+
+    private String classifySingle(String tweet) {
+        tweets.increment();
+        return appendResult(new StringBuilder(), classifier.classify(tweet)).toString();
+    }
+
+    private String classifyBatch(List<String> batch) {
+        tweets.add(batch.size());
+        StringBuilder sb = new StringBuilder(batch.size() * 64).append('[');
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) sb.append(',');
+            appendResult(sb, classifier.classify(batch.get(i)));
+        }
+        return sb.append(']').toString();
+    }
+
+    private static StringBuilder appendResult(StringBuilder sb, LoadSheddingClassifier.Result result) {
+        final double value = result.getSentimentValue();
+        sb.append("{\"score\":");
+        if (Double.isFinite(value)) sb.append(value);
+        else sb.append("null");
+        return sb.append(",\"classification\":\"").append(result.getClassification())
+                .append("\",\"mode\":\"").append(result.getMode()).append("\"}");
+    }
+
+    /**
+     * @return Value of the Content-Length header, or -1 if there is none
+     * @throws NumberFormatException If the header is not a non-negative number
+     */
+    private static long getContentLength(HttpExchange exchange) {
+        final String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength == null) return -1;
+
+        final long length = Long.parseLong(contentLength.trim());
+        if (length < 0) {
+            throw new NumberFormatException("Negative Content-Length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * @return Request body, or null if it is larger than {@link #maxRequestBytes}
+     */
+    private String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                if (body.size() + read > maxRequestBytes) return null;
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                code == HTTP_OK ? "application/json; charset=utf-8" : "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+
+    /**
+     * Serves the classifier over HTTP until the process is killed.
+     *
+     * @param args Lexicon file, options file, dictionary file, port and optionally number of workers
+     */
+    public static void main(String[] args) throws IOException {
+        final int concurrency = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        ReloadableClassifier classifier = new ReloadableClassifier(new File(args[0]), new File(args[1]),
+                new File(args[2]), 1 << 16, ResultCache.Key.RAW_TWEET);
+        classifier.watch(2000);
+
+        HttpClassificationServer server = new HttpClassificationServer(classifier::getClassifier,
+                new InetSocketAddress(Integer.parseInt(args[3])), concurrency, 64 * concurrency, 1 << 20);
+        server.start();
+        System.err.println("Listening on " + server.getAddress());
+    }
+}
@@ -0,0 +1,369 @@
+package com.freva.masteroppgave.service;
+
+import com.freva.masteroppgave.classifier.Classifier;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Scheduler sharing one pool of classification workers between several lanes of traffic, f.ex. interactive look ups
+ * and bulk backfills. Every lane has its own bounded queue, and workers take work from the lanes by stride scheduling:
+ * each lane advances a virtual time by 1 / weight for every task taken, and the lane furthest behind goes next, so
+ * busy lanes share the workers in proportion to their weights and an idle lane gets no credit for the time it was
+ * idle. A lane may also be limited to fewer workers than the pool has, which keeps workers free for the other lanes
+ * even when it has plenty of work, and may give its tasks a deadline, after which they fail with
+ * {@link TimeoutException} instead of being started.
+ *
+ * Giving interactive traffic a high weight and limiting bulk traffic to all but one or two workers keeps interactive
+ * latency down to roughly the time of one classification, while bulk jobs use whatever capacity is left.
+ */
+public class LaneScheduler implements Closeable {
+    private static final long STRIDE = 1 << 20;
+
+    private final Supplier<Classifier> classifier;
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private long virtualTime;
+    private volatile boolean closed;
+
+    /**
+     * @param classifier Source of the classifier to use, looked up for every task
+     * @param numWorkers Number of worker threads shared by all lanes
+     * @param lanes      Lanes to schedule between, with distinct names
+     */
+    public LaneScheduler(Supplier<Classifier> classifier, int numWorkers, Collection<Lane> lanes) {
+        this.classifier = classifier;
+        for (Lane lane : lanes) {
+            if (this.lanes.put(lane.name, lane) != null) {
+                throw new IllegalArgumentException("Duplicate lane: " + lane.name);
+            }
+        }
+
+        for (int i = 0; i < numWorkers; i++) {
+            Thread worker = new Thread(this::work, "lane-scheduler-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+
+    /**
+     * Queues tweet for classification in lane
+     *
+     * @param lane  Name of lane
+     * @param tweet Tweet to classify
+     * @return Future sentiment value of tweet. Fails with {@link TimeoutException} if the lane's deadline passes before
+     * a worker starts classifying the tweet.
+     * @throws RejectedExecutionException If the lane's queue is full or the scheduler is closed
+     */
+    public CompletableFuture<Double> submit(String lane, String tweet) {
+        return submit(lane, Collections.singletonList(tweet)).thenApply(sentimentValues -> sentimentValues[0]);
+    }
+
+    /**
+     * Queues tweets for classification in lane as a single task, which is classified by one worker in one go. Bulk
+     * callers should keep their batches small enough that holding a worker for a whole batch does not matter.
+     *
+     * @param lane   Name of lane
+     * @param tweets Tweets to classify
+     * @return Future sentiment values of tweets, in the same order as tweets
+     * @throws RejectedExecutionException If the lane's queue is full or the scheduler is closed
+     */
+    public CompletableFuture<double[]> submit(String lane, List<String> tweets) {
+        final Lane target = getLane(lane);
+        final Task task = new Task(target, tweets.toArray(new String[tweets.size()]));
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("Scheduler is closed");
+            }
+            if (target.queue.size() >= target.queueCapacity) {
+                target.rejected.increment();
+                throw new RejectedExecutionException("Queue of lane " + lane + " is full");
+            }
+
+            if (target.queue.isEmpty()) {
+                target.virtualTime = Math.max(target.virtualTime, virtualTime);
+            }
+            target.queue.add(task);
+            target.submitted.increment();
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        return task.result;
+    }
+
+    public Lane getLane(String lane) {
+        final Lane found = lanes.get(lane);
+        if (found == null) {
+            throw new IllegalArgumentException("Unknown lane: " + lane);
+        }
+        return found;
+    }
+
+    public Collection<Lane> getLanes() {
+        return Collections.unmodifiableCollection(lanes.values());
+    }
+
+    /**
+     * Stops the workers once they finish their current tasks. Queued tasks fail with
+     * {@link RejectedExecutionException}.
+     */
+    public void close() {
+        List<Task> dropped = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            for (Lane lane : lanes.values()) {
+                dropped.addAll(lane.queue);
+                lane.queue.clear();
+            }
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        for (Task task : dropped) {
+            task.result.completeExceptionally(new RejectedExecutionException("Scheduler is closed"));
+        }
+    }
+
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "LaneScheduler{", "}");
+        lanes.values().forEach(lane -> joiner.add(lane.toString()));
+        return joiner.toString();
+    }
+
+
+    private void work() {
+        final List<Task> expired = new ArrayList<>();
+        while (true) {
+            Task task;
+            lock.lock();
+            try {
+                while ((task = poll(expired)) == null && expired.isEmpty() && !closed) {
+                    workAvailable.await();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            failExpired(expired);
+            if (task == null) {
+                if (closed) return;
+                continue;
+            }
+
+            try {
+                final Classifier current = classifier.get();
+                final double[] sentimentValues = new double[task.tweets.length];
+                for (int i = 0; i < sentimentValues.length; i++) {
+                    sentimentValues[i] = current.calculateSentiment(task.tweets[i]);
+                }
+                task.result.complete(sentimentValues);
+            } catch (RuntimeException e) {
+                task.result.completeExceptionally(e);
+            } finally {
+                finish(task.lane);
+            }
+        }
+    }
+
+    /**
+     * Takes the next task to run, must be called holding the lock. Tasks whose deadline has passed are moved to
+     * expired on the way, to be failed once the lock is released.
+     *
+     * @return Next task to run, or null if no lane has both queued tasks and free concurrency
+     */
+    private Task poll(List<Task> expired) {
+        Lane lane;
+        while ((lane = nextLane()) != null) {
+            final Task task = lane.queue.poll();
+            final long waited = System.nanoTime() - task.submitted;
+            if (lane.deadline > 0 && waited > lane.deadline) {
+                lane.expired.increment();
+                expired.add(task);
+                continue;
+            }
+
+            lane.running++;
+            lane.virtualTime += STRIDE / lane.weight;
+            virtualTime = lane.virtualTime;
+            lane.recordWait(waited);
+            return task;
+        }
+        return null;
+    }
+
+    /**
+     * @return Lane with queued tasks and free concurrency that is furthest behind in virtual time, or null if none
+     */
+    private Lane nextLane() {
+        Lane next = null;
+        for (Lane lane : lanes.values()) {
+            if (lane.queue.isEmpty() || lane.running >= lane.maxConcurrency) continue;
+            if (next == null || lane.virtualTime < next.virtualTime) next = lane;
+        }
+        return next;
+    }
+
+    private void finish(Lane lane) {
+        lane.completed.increment();
+        lock.lock();
+        try {
+            lane.running--;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void failExpired(List<Task> expired) {
+        for (Task task : expired) {
+            task.result.completeExceptionally(new TimeoutException("Deadline of lane " + task.lane.name + " passed"));
+        }
+        expired.clear();
+    }
+
+
+    /**
+     * Lane of traffic with its own queue, weight, concurrency limit and deadline, and metrics of the time its tasks
+     * wait before being started. Only the scheduler changes the queue and the virtual time, always under its lock.
+     */
+    public static class Lane {
+        private static final int WAIT_BUCKETS = 40;
+
+        private final String name;
+        private final int weight;
+        private final int maxConcurrency;
+        private final int queueCapacity;
+        private final long deadline;
+
+        private final ArrayDeque<Task> queue = new ArrayDeque<>();
+        private long virtualTime;
+        private int running;
+
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder expired = new LongAdder();
+        private final LongAdder totalWait = new LongAdder();
+        private final LongAdder started = new LongAdder();
+        private final AtomicLongArray waitHistogram = new AtomicLongArray(WAIT_BUCKETS);
+
+        /**
+         * @param name           Name of lane
+         * @param weight         Share of the workers the lane gets relative to the other lanes when all are busy
+         * @param maxConcurrency Maximum number of workers running the lane's tasks at the same time
+         * @param queueCapacity  Maximum number of queued tasks, more are rejected
+         * @param deadline       Maximum nanoseconds a task may wait before being started, or 0 for no deadline
+         */
+        public Lane(String name, int weight, int maxConcurrency, int queueCapacity, long deadline) {
+            if (weight <= 0 || maxConcurrency <= 0 || queueCapacity <= 0) {
+                throw new IllegalArgumentException("Weight, concurrency and queue capacity of lane must be positive");
+            }
+
+            this.name = name;
+            this.weight = weight;
+            this.maxConcurrency = maxConcurrency;
+            this.queueCapacity = queueCapacity;
+            this.deadline = deadline;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Number of queued tasks. Read without locking, so it may be slightly out of date.
+         */
+        public int getQueueDepth() {
+            return queue.size();
+        }
+
+        public long getSubmitted() {
+            return submitted.sum();
+        }
+
+        public long getCompleted() {
+            return completed.sum();
+        }
+
+        /**
+         * @return Number of tasks rejected because the queue was full
+         */
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        /**
+         * @return Number of tasks dropped because they were not started before the deadline
+         */
+        public long getExpired() {
+            return expired.sum();
+        }
+
+        /**
+         * @return Average nanoseconds started tasks waited in the queue
+         */
+        public double getAverageWait() {
+            final long count = started.sum();
+            return count == 0 ? 0 : (double) totalWait.sum() / count;
+        }
+
+        /**
+         * @param percentile Percentile in [0, 1]
+         * @return Upper bound of the nanoseconds the given percentile of started tasks waited in the queue, accurate to
+         * within a factor of 2
+         */
+        public long getWaitPercentile(double percentile) {
+            final long count = started.sum();
+            long seen = 0;
+            for (int i = 0; i < WAIT_BUCKETS; i++) {
+                seen += waitHistogram.get(i);
+                if (seen > 0 && seen >= percentile * count) {
+                    return 1L << i;
+                }
+            }
+            return 0;
+        }
+
+        public String toString() {
+            return name + "{queued=" + getQueueDepth() + ", completed=" + getCompleted() + ", rejected=" +
+                    getRejected() + ", expired=" + getExpired() + ", avgWait=" + (long) getAverageWait() / 1000 +
+                    "us, p99Wait=" + getWaitPercentile(0.99) / 1000 + "us}";
+        }
+
+        private void recordWait(long wait) {
+            started.increment();
+            totalWait.add(wait);
+            final int bucket = 64 - Long.numberOfLeadingZeros(Math.max(1, wait));
+            waitHistogram.incrementAndGet(Math.min(WAIT_BUCKETS - 1, bucket));
+        }
+    }
+
+    private static class Task {
+        private final Lane lane;
+        private final String[] tweets;
+        private final long submitted = System.nanoTime();
+        private final CompletableFuture<double[]> result = new CompletableFuture<>();
+
+        private Task(Lane lane, String[] tweets) {
+            this.lane = lane;
+            this.tweets = tweets;
+        }
+    }
+}
@@ -4,12 +4,12 @@ import com.freva.masteroppgave.lexicon.LexiconCreator;
 import com.freva.masteroppgave.Main;
 import com.freva.masteroppgave.classifier.Classifier;
 import com.freva.masteroppgave.classifier.ClassifierOptions;
+import com.freva.masteroppgave.classifier.CompiledOptions;
 import com.freva.masteroppgave.lexicon.container.PriorPolarityLexicon;
 import com.freva.masteroppgave.utils.reader.DataSetReader;
 import com.freva.masteroppgave.utils.reader.DataSetReader.Classification;
 import com.freva.masteroppgave.utils.reader.DataSetReader.DataSetEntry;
 import com.freva.masteroppgave.utils.reader.LineReader;
-import com.freva.masteroppgave.utils.tools.Parallel;
 
 import java.io.File;
 import java.io.IOException;
@@ -50,6 +50,7 @@ public class ClassificationOptimizer {
     }
 
     public static void runOptimizer(List<DataSetEntry> entries) throws IOException {
+        CompiledOptions options = ClassifierOptions.compileOptions();
         Set<String> checked = new HashSet<>();
         int numChangedVariables;
         double bestScore = 0;
@@ -62,8 +63,9 @@ public class ClassificationOptimizer {
                     bestValues[i] = lexiconVariables[i][index];
                     String check = Arrays.toString(bestValues);
                     if (! checked.contains(check)) {
-                        Classifier classifier = new Classifier(new PriorPolarityLexicon(generateLexicon((int) bestValues[0], bestValues[1], bestValues[2], bestValues[3], bestValues[4])));
-                        Entry<Map<String, Double>, Double> optimized = optimizeClassifier(classifier, entries);
+                        Classifier classifier = new Classifier(new PriorPolarityLexicon(generateLexicon((int) bestValues[0], bestValues[1], bestValues[2], bestValues[3], bestValues[4])), null, options);
+                        Entry<CompiledOptions, Double> optimized = optimizeClassifier(classifier, entries);
+                        options = optimized.getKey();
 
                         System.out.println(optimized.getValue() + " | " + Arrays.toString(bestValues) + " | " + optimized.getKey());
                         if (optimized.getValue() > bestScore) {
@@ -81,28 +83,37 @@ public class ClassificationOptimizer {
         } while(numChangedVariables != 0);
     }
 
-    public static Entry<Map<String, Double>, Double> optimizeClassifier(Classifier classifier, List<DataSetEntry> entries) throws IOException {
+    /**
+     * Finds the combination of variable values that gives the highest F1-score, starting from the options of the
+     * given classifier. Every candidate is evaluated on its own immutable copy of the options, so the classifiers
+     * being evaluated are never affected by changes made for other candidates.
+     *
+     * @param classifier Classifier to optimize options for
+     * @param entries    Dataset entries to evaluate classifier on
+     * @return Best options found (including classification thresholds) and the F1-score they achieved
+     */
+    public static Entry<CompiledOptions, Double> optimizeClassifier(Classifier classifier, List<DataSetEntry> entries) throws IOException {
         int numChangedVariables;
-        Map<String, Double> bestOptions = null;
+        CompiledOptions currentOptions = classifier.getOptions();
+        CompiledOptions bestOptions = currentOptions;
         double bestScore = 0;
         do {
             numChangedVariables = 0;
             for (ClassifierOptions.Variable variable : variableValues.keySet()) {
-                double bestValue = ClassifierOptions.getVariable(variable);
+                double bestValue = currentOptions.getVariable(variable);
 
                 for (double value : variableValues.get(variable)) {
-                    ClassifierOptions.setVariable(variable, value);
-                    final double score = calculateScore(classifier, entries);
+                    Entry<CompiledOptions, Double> score = calculateScore(classifier.withOptions(currentOptions.withVariable(variable, value)), entries);
 
-                    if (score > bestScore) {
-                        bestScore = score;
+                    if (score.getValue() > bestScore) {
+                        bestScore = score.getValue();
                         bestValue = value;
-                        bestOptions = ClassifierOptions.getOptions();
+                        bestOptions = score.getKey();
                         numChangedVariables++;
                     }
                 }
 
-                ClassifierOptions.setVariable(variable, bestValue);
+                currentOptions = currentOptions.withVariable(variable, bestValue);
             }
         } while (numChangedVariables > 0);
 
@@ -119,21 +130,24 @@ public class ClassificationOptimizer {
         return creator.createLexicon(dataset, filteredNGrams, minTotalOccurrences, minSentiment, Main.TWEET_FILTERS);
     }
 
-    private static double calculateScore(Classifier classifier, List<DataSetEntry> entries) {
+    private static Entry<CompiledOptions, Double> calculateScore(Classifier classifier, List<DataSetEntry> entries) {
+        double[] predictedSentiments = classifier.scoreBatch(entries.stream().map(DataSetEntry::getTweet));
+
         ClassificationThreshold threshold = new ClassificationThreshold();
-        Parallel.For(entries, entry -> {
-            double predictedSentiment = classifier.calculateSentiment(entry.getTweet());
-            threshold.updateEvidence(entry.getClassification(), predictedSentiment);
-        });
-        ClassifierOptions.setVariable(ClassifierOptions.Variable.CLASSIFICATION_THRESHOLD_LOWER, threshold.getLowThreshold());
-        ClassifierOptions.setVariable(ClassifierOptions.Variable.CLASSIFICATION_THRESHOLD_HIGHER, threshold.getHighThreshold());
+        for (int i = 0; i < entries.size(); i++) {
+            threshold.updateEvidence(entries.get(i).getClassification(), predictedSentiments[i]);
+        }
+        CompiledOptions options = classifier.getOptions()
+                .withVariable(ClassifierOptions.Variable.CLASSIFICATION_THRESHOLD_LOWER, threshold.getLowThreshold())
+                .withVariable(ClassifierOptions.Variable.CLASSIFICATION_THRESHOLD_HIGHER, threshold.getHighThreshold());
 
         ClassificationMetrics classificationMetrics = new ClassificationMetrics(Classification.values());
-        Parallel.For(entries, entry -> {
-            Classification predicted = classifier.classify(entry.getTweet());
-            classificationMetrics.updateEvidence(entry.getClassification(), predicted);
-        });
+        for (int i = 0; i < entries.size(); i++) {
+            Classification predicted = Classification.classifyFromThresholds(predictedSentiments[i],
+                    threshold.getLowThreshold(), threshold.getHighThreshold());
+            classificationMetrics.updateEvidence(entries.get(i).getClassification(), predicted);
+        }
 
-        return classificationMetrics.getF1Score();
+        return new AbstractMap.SimpleEntry<>(options, classificationMetrics.getF1Score());
     }
 }
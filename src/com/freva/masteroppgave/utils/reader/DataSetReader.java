@@ -7,14 +7,22 @@ import com.freva.masteroppgave.utils.reader.DataSetReader.DataSetEntry;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
+/**
+ * Reads a tab separated data set with one entry per line. Blank lines, f.ex. the empty lines at the end of a file, are
+ * skipped.
+ */
 public class DataSetReader implements Iterator<DataSetEntry>, Iterable<DataSetEntry>, Progressable {
     private static final Pattern tab_regex = Pattern.compile("\t");
 
     private final LineReader lineReader;
     private final int tweetIndex;
     private final int classIndex;
+    private String nextLine;
 
     public DataSetReader(File file, int tweetIndex, int classIndex) throws IOException {
         lineReader = new LineReader(file);
@@ -23,21 +31,62 @@ public class DataSetReader implements Iterator<DataSetEntry>, Iterable<DataSetEn
     }
 
     public boolean hasNext() {
-        return lineReader.hasNext();
+        while (nextLine == null && lineReader.hasNext()) {
+            final String line = lineReader.next();
+            if (!isBlank(line)) {
+                nextLine = line;
+            }
+        }
+        return nextLine != null;
     }
 
     public DataSetEntry next() {
-        return new DataSetEntry(lineReader.next(), tweetIndex, classIndex);
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final String line = nextLine;
+        nextLine = null;
+        return new DataSetEntry(line, tweetIndex, classIndex);
     }
 
     public Iterator<DataSetEntry> iterator() {
         return this;
     }
 
+    /**
+     * @return Spliterator over the remaining entries, which splits the rest of the file into ranges read in parallel,
+     * f.ex. by {@link com.freva.masteroppgave.utils.tools.Parallel#For(Spliterator, java.util.function.Supplier,
+     * com.freva.masteroppgave.utils.tools.Parallel.StatefulOperation)}
+     */
+    public Spliterator<DataSetEntry> spliterator() {
+        return parallelStream().spliterator();
+    }
+
+    /**
+     * @return Parallel stream of the remaining entries on the common fork join pool, see
+     * {@link LineReader#parallelStream()}
+     */
+    public Stream<DataSetEntry> parallelStream() {
+        Stream<String> lines = lineReader.parallelStream().filter(line -> !isBlank(line));
+        if (nextLine != null) {
+            lines = Stream.concat(Stream.of(nextLine), lines).parallel();
+            nextLine = null;
+        }
+        return lines.map(line -> new DataSetEntry(line, tweetIndex, classIndex));
+    }
+
     public double getProgress() {
         return lineReader.getProgress();
     }
 
+    private static boolean isBlank(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (!Character.isWhitespace(line.charAt(i))) return false;
+        }
+        return true;
+    }
+
 
     public class DataSetEntry {
         private final Classification classification;
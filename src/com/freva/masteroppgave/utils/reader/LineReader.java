@@ -1,37 +1,205 @@
 package com.freva.masteroppgave.utils.reader;
 
-import com.freva.masteroppgave.utils.FileUtils;
 import com.freva.masteroppgave.utils.progressbar.Progressable;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
-import java.util.Scanner;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class LineReader implements Iterator<String>, Iterable<String>, Progressable {
-    private Scanner scanner;
-    private int totalLines = 0;
-    private int lineCounter = 0;
+/**
+ * Reads a UTF-8 file line by line through memory mapped windows of the file, in a single pass. Lines are separated by
+ * '\n' or "\r\n", and every line is returned, including empty ones, except for an empty last line after the final
+ * separator. Progress is the share of the file's bytes returned so far, so the file does not have to be read in
+ * advance to count its lines. The file is closed once the last line is read, or by {@link #close()}.
+ *
+ * The remaining lines can also be read in parallel through {@link #spliterator()} or {@link #parallelStream()}, which
+ * split the rest of the file into byte ranges that are read independently, see {@link LineSpliterator}. Progress then
+ * includes the bytes read by all the ranges. The parallel stream runs on the common fork join pool, while the
+ * spliterator can be given to {@link com.freva.masteroppgave.utils.tools.Parallel} to read the ranges on its pool.
+ */
+public class LineReader implements Iterator<String>, Iterable<String>, Progressable, Closeable {
+    private static final int WINDOW_SIZE = 1 << 26;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long rangeEnd;
+    private final boolean ownsChannel;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private byte[] lineBuffer = new byte[1024];
+
+    private String nextLine;
+    private long nextLineEnd;
+    private long position;
+    private LineSpliterator spliterator;
 
     public LineReader(File file) throws IOException {
-        this.totalLines = FileUtils.countLines(file);
-        this.scanner = new Scanner(file, "UTF-8");
+        this(FileChannel.open(file.toPath()), 0, Long.MAX_VALUE, true);
+    }
+
+    /**
+     * Creates reader of the lines starting in [start, end) of the file, the last of which may continue past end.
+     *
+     * @param ownsChannel Whether to close the channel once the lines are read
+     */
+    LineReader(FileChannel channel, long start, long end, boolean ownsChannel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.rangeEnd = Math.min(end, size);
+        this.ownsChannel = ownsChannel;
+        if (start >= rangeEnd) {
+            finish();
+            return;
+        }
+
+        // A line belongs to the range it starts in, so skip the rest of the line that starts before the range
+        position = start == 0 ? 0 : findLineEnd(start - 1) + 1;
+        readLine(position);
     }
 
     public boolean hasNext() {
-        return scanner.hasNext();
+        return nextLine != null;
     }
 
     public String next() {
-        lineCounter++;
-        return scanner.nextLine();
+        if (nextLine == null) {
+            throw new NoSuchElementException();
+        }
+
+        final String line = nextLine;
+        position = nextLineEnd;
+        try {
+            readLine(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return line;
     }
 
     public Iterator<String> iterator() {
         return this;
     }
 
+    /**
+     * Hands the remaining lines over to a {@link LineSpliterator}, after which this reader has no more lines of its
+     * own. The file is closed once all the ranges split off from it are read.
+     *
+     * @return Spliterator over the remaining lines
+     */
+    public Spliterator<String> spliterator() {
+        if (spliterator == null) {
+            final long start = nextLine == null ? rangeEnd : position;
+            position = start;
+            nextLine = null;
+            window = null;
+            try {
+                spliterator = new LineSpliterator(channel, start, rangeEnd, ownsChannel);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return spliterator;
+    }
+
+    /**
+     * @return Parallel stream of the remaining lines, see {@link #spliterator()}
+     */
+    public Stream<String> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
     public double getProgress() {
-        return (totalLines == 0 ? 0 : 100.0 * lineCounter / totalLines);
+        final long read = spliterator == null ? position : position + spliterator.getBytesRead();
+        return size == 0 ? 100 : 100.0 * read / size;
+    }
+
+    public void close() throws IOException {
+        nextLine = null;
+        window = null;
+        channel.close();
+    }
+
+
+    /**
+     * @return Byte offset of the end of the last line returned, or of the start of the first line if none is
+     */
+    long getPosition() {
+        return position;
+    }
+
+
+    /**
+     * Reads the line starting at byte offset start into nextLine, or sets it to null if start is the end of the range
+     */
+    private void readLine(long start) throws IOException {
+        if (start >= rangeEnd) {
+            finish();
+            return;
+        }
+
+        final long lineEnd = findLineEnd(start);
+        final int lineStart = (int) (start - windowStart);
+        int end = (int) (lineEnd - windowStart);
+        nextLineEnd = lineEnd < size ? lineEnd + 1 : lineEnd;
+        if (end > lineStart && window.get(end - 1) == '\r') {
+            end--;
+        }
+
+        final int length = end - lineStart;
+        if (lineBuffer.length < length) {
+            lineBuffer = new byte[Math.max(2 * lineBuffer.length, length)];
+        }
+        window.position(lineStart);
+        window.get(lineBuffer, 0, length);
+        nextLine = new String(lineBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void finish() throws IOException {
+        nextLine = null;
+        window = null;
+        if (ownsChannel) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Finds the end of the line containing byte offset start, mapping windows of the file until the window contains
+     * all of [start, end of line).
+     *
+     * @return Byte offset of the first '\n' at or after start, or the size of the file if there is none
+     */
+    private long findLineEnd(long start) throws IOException {
+        if (window == null || start < windowStart || start > windowStart + window.limit()) {
+            mapWindow(start, Math.min(WINDOW_SIZE, rangeEnd - start + 1));
+        }
+
+        while (true) {
+            final int limit = window.limit();
+            for (int i = (int) (start - windowStart); i < limit; i++) {
+                if (window.get(i) == '\n') return windowStart + i;
+            }
+
+            final long windowEnd = windowStart + limit;
+            if (windowEnd >= size) {
+                return size;
+            }
+            // The line continues past the window, so map a new window starting at start, large enough for the line
+            mapWindow(start, Math.max(Math.min(WINDOW_SIZE, rangeEnd - start), 2 * (windowEnd - start)));
+        }
+    }
+
+    private void mapWindow(long start, long length) throws IOException {
+        length = Math.min(Math.min(length, Integer.MAX_VALUE), size - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        windowStart = start;
     }
 }
@@ -0,0 +1,158 @@
+package com.freva.masteroppgave.utils.reader;
+
+import com.freva.masteroppgave.utils.progressbar.Progressable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spliterator over the lines of a UTF-8 file, which splits the file into byte ranges that are read and decoded
+ * independently, each by its own {@link LineReader}, so parallel streams can read a corpus with all their threads. A
+ * line belongs to the range its first byte is in, so ranges are split at any byte: a range skips the line started in
+ * the range before it, and finishes its own last line past its end. Lines are returned as by {@link LineReader}.
+ *
+ * A range can only be split before it is read from, and ranges smaller than 2 * {@link #MIN_SPLIT_SIZE} are not split.
+ * The ranges share the file, which is closed once all of them are read, or by {@link #close()} if a stream stops early.
+ */
+public class LineSpliterator implements Spliterator<String>, Progressable, Closeable {
+    private static final long MIN_SPLIT_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    private final long totalSize;
+    private final LongAdder bytesRead;
+    private final AtomicInteger unfinishedRanges;
+
+    private long start;
+    private final long end;
+    private LineReader reader;
+    private boolean finished;
+
+    public LineSpliterator(File file) throws IOException {
+        this(FileChannel.open(file.toPath()), 0, Long.MAX_VALUE, true);
+    }
+
+    /**
+     * @param start       Byte offset of the start of the first line
+     * @param end         Byte offset the lines must start before, capped to the size of the file
+     * @param ownsChannel Whether to close the channel once all ranges are read
+     */
+    LineSpliterator(FileChannel channel, long start, long end, boolean ownsChannel) throws IOException {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.start = start;
+        this.end = start < end ? Math.min(end, channel.size()) : start;
+        this.totalSize = Math.max(0, this.end - start);
+        this.bytesRead = new LongAdder();
+        this.unfinishedRanges = new AtomicInteger(1);
+    }
+
+    private LineSpliterator(LineSpliterator parent, long start, long end) {
+        this.channel = parent.channel;
+        this.ownsChannel = parent.ownsChannel;
+        this.totalSize = parent.totalSize;
+        this.bytesRead = parent.bytesRead;
+        this.unfinishedRanges = parent.unfinishedRanges;
+        this.start = start;
+        this.end = end;
+        unfinishedRanges.incrementAndGet();
+    }
+
+    /**
+     * @return Parallel stream of the lines
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(this, true).onClose(this::close);
+    }
+
+    public boolean tryAdvance(Consumer<? super String> action) {
+        if (!open()) return false;
+        if (!reader.hasNext()) {
+            finish();
+            return false;
+        }
+
+        final long lineStart = reader.getPosition();
+        final String line = reader.next();
+        bytesRead.add(reader.getPosition() - lineStart);
+        action.accept(line);
+        return true;
+    }
+
+    /**
+     * Splits off the first half of the range, unless the range is already being read or is too small to split
+     */
+    public Spliterator<String> trySplit() {
+        if (reader != null || finished || end - start < 2 * MIN_SPLIT_SIZE) return null;
+
+        final long middle = start + (end - start) / 2;
+        final LineSpliterator prefix = new LineSpliterator(this, start, middle);
+        start = middle;
+        return prefix;
+    }
+
+    /**
+     * @return Number of bytes left in the range, which is more than the number of lines left
+     */
+    public long estimateSize() {
+        return finished ? 0 : end - start;
+    }
+
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * @return Share of the bytes read by all ranges split from the same file
+     */
+    public double getProgress() {
+        return totalSize == 0 ? 100 : 100.0 * bytesRead.sum() / totalSize;
+    }
+
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+
+    private boolean open() {
+        if (finished) return false;
+        if (reader != null) return true;
+        if (start >= end) {
+            finish();
+            return false;
+        }
+
+        try {
+            reader = new LineReader(channel, start, end, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    private void finish() {
+        finished = true;
+        reader = null;
+        if (unfinishedRanges.decrementAndGet() == 0 && ownsChannel) {
+            close();
+        }
+    }
+}
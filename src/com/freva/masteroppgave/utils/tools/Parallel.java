@@ -1,48 +1,367 @@
 package com.freva.masteroppgave.utils.tools;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
+/**
+ * Parallel for loops on a shared pool of daemon threads. The calling thread works on its own loop alongside the pool,
+ * so loops may be nested, f.ex. a batch classification inside a parallel loop, without waiting for pool threads that
+ * are busy with the outer loop. Work is handed out in chunks, so threads synchronize once per chunk rather than once
+ * per element. Index loops hand out chunks that shrink as the loop nears its end, and loops over iterators hand out
+ * chunks that grow as the loop goes on, as the number of elements left is not known.
+ *
+ * If an operation throws, no more chunks are handed out and the first exception is rethrown to the caller once the
+ * threads working on the loop are done. A loop stopped by its {@link Cancellation} before all elements are done throws
+ * {@link CancellationException}.
+ */
 public class Parallel {
     private static final int NUM_CORES = Runtime.getRuntime().availableProcessors();
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int MAX_ITERATOR_CHUNK = 256;
+
+    private static ExecutorService pool;
+    private static int parallelism = NUM_CORES;
 
     /**
-     * Executes the for loop in parallel on as many cores as available. The elements are loaded from iterable when
-     * needed, and not on load.
+     * Executes the for loop in parallel on as many threads as the parallelism. The elements are loaded from iterable
+     * when needed, and not on load.
      *
      * @param elements  Elements to iterate over
      * @param operation Operation applied to each element
      */
     public static <T> void For(final Iterable<T> elements, final Operation<T> operation) {
-        ExecutorService forPool = Executors.newFixedThreadPool(NUM_CORES);
-
-        Iterator<T> iterator = elements.iterator();
-        for (int i = 0; i < NUM_CORES; i++) {
-            forPool.submit((Runnable) () -> {
-                while (true) {
-                    T next;
-                    synchronized (iterator) {
-                        if (!iterator.hasNext()) {
-                            return;
-                        }
-                        next = iterator.next();
+        For(elements, null, (state, element) -> operation.perform(element), null);
+    }
+
+    /**
+     * Executes the for loop in parallel, giving every thread working on the loop its own state, f.ex. scratch buffers
+     * or counters to merge once the loop is done.
+     *
+     * @param elements  Elements to iterate over
+     * @param init      Creates the state of a thread, called once by each thread working on the loop
+     * @param operation Operation applied to the thread's state and each element
+     * @return States of the threads that worked on the loop, in no particular order
+     */
+    public static <T, S> List<S> For(final Iterable<T> elements, final Supplier<S> init,
+                                     final StatefulOperation<T, S> operation) {
+        return For(elements, init, operation, null);
+    }
+
+    /**
+     * Executes the for loop in parallel until all elements are done or cancellation is cancelled.
+     *
+     * @param elements     Elements to iterate over
+     * @param init         Creates the state of a thread, or null for no state
+     * @param operation    Operation applied to the thread's state and each element
+     * @param cancellation Cancellation checked between chunks, or null
+     * @return States of the threads that worked on the loop, in no particular order, empty if init is null
+     * @throws CancellationException If the loop was cancelled before all elements were done
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, S> List<S> For(final Iterable<T> elements, final Supplier<S> init,
+                                     final StatefulOperation<T, S> operation, final Cancellation cancellation) {
+        if (elements instanceof List && elements instanceof RandomAccess) {
+            final List<T> list = (List<T>) elements;
+            return For(0, list.size(), init, (state, index) -> operation.perform(state, list.get(index)), cancellation);
+        }
+
+        final Iterator<T> iterator = elements.iterator();
+        final AtomicInteger claimed = new AtomicInteger();
+        final int threads = getParallelism();
+        return new Loop<S>(init, cancellation) {
+            boolean runChunk(S state) {
+                final int chunkSize = Math.min(MAX_ITERATOR_CHUNK, 1 + claimed.get() / (threads * CHUNKS_PER_THREAD));
+                final Object[] chunk = new Object[chunkSize];
+                int count = 0;
+                synchronized (iterator) {
+                    while (count < chunkSize && iterator.hasNext()) {
+                        chunk[count++] = iterator.next();
                     }
-                    operation.perform(next);
                 }
+                if (count == 0) return false;
+
+                claimed.addAndGet(count);
+                for (int i = 0; i < count; i++) {
+                    operation.perform(state, (T) chunk[i]);
+                }
+                return true;
+            }
+        }.execute();
+    }
+
+    /**
+     * Executes the for loop over the elements of a splittable source, f.ex. the lines of a file read by
+     * {@link com.freva.masteroppgave.utils.reader.LineSpliterator}, in parallel, giving every thread working on the loop
+     * its own state. Unlike a parallel stream of the source, which runs on the common fork join pool, the loop runs on
+     * this class' pool, so it follows {@link #setParallelism(int)}. The source is split up front into
+     * {@link #CHUNKS_PER_THREAD} ranges per thread, or as many as it allows, and each range is one chunk of the loop.
+     *
+     * @param elements  Source of the elements, must not have been traversed
+     * @param init      Creates the state of a thread, called once by each thread working on the loop
+     * @param operation Operation applied to the thread's state and each element
+     * @return States of the threads that worked on the loop, in no particular order
+     */
+    public static <T, S> List<S> For(final Spliterator<T> elements, final Supplier<S> init,
+                                     final StatefulOperation<T, S> operation) {
+        final int maxRanges = getParallelism() * CHUNKS_PER_THREAD;
+        final List<Spliterator<T>> ranges = new ArrayList<>();
+        ranges.add(elements);
+        for (boolean split = true; split && ranges.size() < maxRanges; ) {
+            split = false;
+            for (int i = 0, numRanges = ranges.size(); i < numRanges && ranges.size() < maxRanges; i++) {
+                final Spliterator<T> prefix = ranges.get(i).trySplit();
+                if (prefix != null) {
+                    ranges.add(prefix);
+                    split = true;
+                }
+            }
+        }
+
+        return For(0, ranges.size(), init,
+                (state, index) -> ranges.get(index).forEachRemaining(element -> operation.perform(state, element)));
+    }
+
+    /**
+     * Executes the for loop over indices in [start, end) in parallel on as many threads as the parallelism.
+     *
+     * @param start     First index (inclusive)
+     * @param end       Last index (exclusive)
+     * @param operation Operation applied to each index
+     */
+    public static void For(final int start, final int end, final IndexOperation operation) {
+        For(start, end, null, (state, index) -> operation.perform(index), null);
+    }
+
+    /**
+     * Executes the for loop over indices in [start, end) in parallel, giving every thread working on the loop its own
+     * state.
+     *
+     * @param start     First index (inclusive)
+     * @param end       Last index (exclusive)
+     * @param init      Creates the state of a thread, called once by each thread working on the loop
+     * @param operation Operation applied to the thread's state and each index
+     * @return States of the threads that worked on the loop, in no particular order
+     */
+    public static <S> List<S> For(final int start, final int end, final Supplier<S> init,
+                                  final StatefulIndexOperation<S> operation) {
+        return For(start, end, init, operation, null);
+    }
+
+    /**
+     * Executes the for loop over indices in [start, end) in parallel until all indices are done or cancellation is
+     * cancelled.
+     *
+     * @param start        First index (inclusive)
+     * @param end          Last index (exclusive)
+     * @param init         Creates the state of a thread, or null for no state
+     * @param operation    Operation applied to the thread's state and each index
+     * @param cancellation Cancellation checked between chunks, or null
+     * @return States of the threads that worked on the loop, in no particular order, empty if init is null
+     * @throws CancellationException If the loop was cancelled before all indices were done
+     */
+    public static <S> List<S> For(final int start, final int end, final Supplier<S> init,
+                                  final StatefulIndexOperation<S> operation, final Cancellation cancellation) {
+        final AtomicInteger next = new AtomicInteger(start);
+        final int threads = getParallelism();
+        return new Loop<S>(init, cancellation) {
+            boolean runChunk(S state) {
+                int chunkStart, chunkSize;
+                do {
+                    chunkStart = next.get();
+                    if (chunkStart >= end) return false;
+                    chunkSize = Math.max(1, (end - chunkStart) / (threads * CHUNKS_PER_THREAD));
+                } while (!next.compareAndSet(chunkStart, chunkStart + chunkSize));
+
+                for (int index = chunkStart, chunkEnd = chunkStart + chunkSize; index < chunkEnd; index++) {
+                    operation.perform(state, index);
+                }
+                return true;
+            }
+        }.execute();
+    }
+
+
+    /**
+     * @return Number of threads working on each loop, counting the calling thread
+     */
+    public static synchronized int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads working on each loop, counting the calling thread. Loops already running finish on
+     * the old pool.
+     *
+     * @param threads Number of threads, defaults to the number of available cores
+     */
+    public static synchronized void setParallelism(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive, was " + threads);
+        }
+
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        parallelism = threads;
+    }
+
+    private static synchronized void startHelpers(Runnable helper) {
+        if (parallelism == 1) return;
+
+        if (pool == null) {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            pool = Executors.newFixedThreadPool(parallelism - 1, runnable -> {
+                Thread thread = new Thread(runnable, "parallel-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
             });
         }
+        for (int i = 1; i < parallelism; i++) {
+            pool.execute(helper);
+        }
+    }
+
+
+    /**
+     * One run of a loop, worked on by the calling thread and by pool threads that get to it before the calling thread
+     * is done. Pool threads that get to it later, f.ex. because they were busy with an outer loop, return at once.
+     */
+    private static abstract class Loop<S> implements Runnable {
+        private final Supplier<S> init;
+        private final Cancellation cancellation;
+        private final List<S> states = new ArrayList<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private volatile boolean exhausted;
+        private int running;
+        private boolean closed;
 
-        try {
-            forPool.shutdown();
-            forPool.awaitTermination(10, TimeUnit.DAYS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        private Loop(Supplier<S> init, Cancellation cancellation) {
+            this.init = init;
+            this.cancellation = cancellation;
+        }
+
+        /**
+         * Claims the next chunk of the loop and applies the operation to it
+         *
+         * @return False if there were no more elements to claim
+         */
+        abstract boolean runChunk(S state);
+
+        /**
+         * Called by the pool threads
+         */
+        public void run() {
+            synchronized (this) {
+                if (closed) return;
+                running++;
+            }
+
+            try {
+                work();
+            } finally {
+                synchronized (this) {
+                    running--;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Called by the thread running the loop, waits for the pool threads working on it
+         */
+        List<S> execute() {
+            startHelpers(this);
+            work();
+
+            boolean interrupted = false;
+            synchronized (this) {
+                closed = true;
+                while (running > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        failure.compareAndSet(null, new CancellationException("Interrupted while waiting for loop"));
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            final Throwable thrown = failure.get();
+            if (thrown instanceof RuntimeException) throw (RuntimeException) thrown;
+            if (thrown instanceof Error) throw (Error) thrown;
+            if (!exhausted) throw new CancellationException("Loop was cancelled");
+            return states;
+        }
+
+        private void work() {
+            if (exhausted || isStopped()) return;
+
+            try {
+                final S state = init == null ? null : init.get();
+                if (init != null) {
+                    synchronized (this) {
+                        states.add(state);
+                    }
+                }
+
+                while (!isStopped()) {
+                    if (!runChunk(state)) {
+                        exhausted = true;
+                        return;
+                    }
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        private boolean isStopped() {
+            return failure.get() != null || (cancellation != null && cancellation.isCancelled());
+        }
+    }
+
+
+    /**
+     * Flag to stop loops early, which is checked between chunks, so the chunks being worked on are finished first
+     */
+    public static class Cancellation {
+        private volatile boolean cancelled;
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
         }
     }
 
     public interface Operation<T> {
         void perform(T pParameter);
     }
-}
\ No newline at end of file
+
+    public interface IndexOperation {
+        void perform(int index);
+    }
+
+    public interface StatefulOperation<T, S> {
+        void perform(S state, T element);
+    }
+
+    public interface StatefulIndexOperation<S> {
+        void perform(S state, int index);
+    }
+}